@@ -0,0 +1,137 @@
+package com.example.debugger;
+
+import com.sun.jdi.*;
+import com.sun.jdi.event.*;
+import com.sun.jdi.request.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of a breakpoint hit against {@link HotLoopTarget}, per kind of breakpoint.
+ * {@code hitsPerSecond} runs the whole cycle (target runs to the hit, the debugger handles it and
+ * resumes); {@code timeToResume} only times handling + resume, from the moment the event set is in hand.
+ * <ul>
+ *   <li>{@code line} / {@code method}: plain suspending breakpoint, method one at the entry location</li>
+ *   <li>{@code methodEntryRequest}: the old MethodEntryRequest + class filter, which also reports every
+ *       other method of the class; only {@code step} entries count as hits</li>
+ *   <li>{@code logpoint}: render a {@link LogTemplate} with a local and a field, then resume</li>
+ *   <li>{@code conditionFalse}: condition evaluated debugger-side and always false</li>
+ *   <li>{@code every10}: VM-side count filter, re-armed after each report</li>
+ *   <li>{@code suspendNone}: nothing is parked, the event is only delivered</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BreakpointHitBenchmark {
+    @Param({"line", "method", "methodEntryRequest", "logpoint", "conditionFalse", "every10", "suspendNone"})
+    public String kind;
+
+    private TargetVm target;
+    private EventRequest request;
+    private LogTemplate template;
+    private Expression condition;
+    private Method step;
+
+    @Setup(Level.Trial)
+    public void launch() throws Exception {
+        target = TargetVm.launch(HotLoopTarget.class);
+        step = target.method("step");
+        Location hit = target.line("step", 2); // window[n & 63] = label.length(): n and label are live
+        switch (kind) {
+            case "method" -> request = breakpoint(step.location(), EventRequest.SUSPEND_EVENT_THREAD);
+            case "methodEntryRequest" -> {
+                MethodEntryRequest r = target.erm.createMethodEntryRequest();
+                r.addClassFilter(target.mainType);
+                r.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+                request = r;
+            }
+            case "logpoint" -> {
+                template = LogTemplate.compile("n={n} label={label} total={this.total}");
+                request = breakpoint(hit, EventRequest.SUSPEND_EVENT_THREAD);
+            }
+            case "conditionFalse" -> {
+                condition = Expression.parse("n < 0 && this.total >= 0");
+                request = breakpoint(hit, EventRequest.SUSPEND_EVENT_THREAD);
+            }
+            case "every10" -> request = breakpoint(hit, EventRequest.SUSPEND_EVENT_THREAD);
+            case "suspendNone" -> request = breakpoint(hit, EventRequest.SUSPEND_NONE);
+            default -> request = breakpoint(hit, EventRequest.SUSPEND_EVENT_THREAD);
+        }
+        if (kind.equals("every10")) ((BreakpointRequest) request).addCountFilter(10);
+        request.enable();
+        target.vm.resume();
+    }
+
+    @TearDown(Level.Trial)
+    public void exit() {
+        target.close();
+    }
+
+    private BreakpointRequest breakpoint(Location loc, int policy) {
+        BreakpointRequest r = target.erm.createBreakpointRequest(loc);
+        r.setSuspendPolicy(policy);
+        return r;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Object hitsPerSecond() throws Exception {
+        return handleAndResume(nextHit());
+    }
+
+    /** The next event set, in hand before the clock starts; each invocation is ~100us+, so Level.Invocation is fine. */
+    @State(Scope.Thread)
+    public static class Hit {
+        EventSet set;
+
+        @Setup(Level.Invocation)
+        public void await(BreakpointHitBenchmark b) throws Exception {
+            set = b.nextHit();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object timeToResume(Hit hit) throws Exception {
+        return handleAndResume(hit.set);
+    }
+
+    private EventSet nextHit() throws InterruptedException {
+        while (true) {
+            EventSet set = target.next();
+            if (!kind.equals("methodEntryRequest")) return set;
+            for (Event e : set) {
+                if (((LocatableEvent) e).location().method().equals(step)) return set;
+            }
+            set.resume(); // <init>, helper, ...: the traffic the breakpoint-based install avoids
+        }
+    }
+
+    /** What the debugger's event loop does for this kind, minus printing. */
+    private Object handleAndResume(EventSet set) throws Exception {
+        Object result = null;
+        for (Event e : set) {
+            LocatableEvent le = (LocatableEvent) e;
+            switch (kind) {
+                case "logpoint" -> result = template.render(le.thread().frame(0), target.meta);
+                case "conditionFalse" -> result = condition.test(le.thread().frame(0), target.meta);
+                case "every10" -> {
+                    BreakpointRequest old = (BreakpointRequest) request;
+                    BreakpointRequest r = breakpoint(old.location(), old.suspendPolicy());
+                    r.addCountFilter(10);
+                    r.enable();
+                    target.erm.deleteEventRequest(old);
+                    request = r;
+                }
+                default -> result = target.meta.locationString(le.location());
+            }
+        }
+        if (set.suspendPolicy() != EventRequest.SUSPEND_NONE) set.resume();
+        return result;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.debugger;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** {@link BreakpointSpec#parse} for the REPL's {@code break} syntaxes, plain to fully loaded. */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BreakpointSpecBenchmark {
+    @Param({
+            "com.example.sample.ExampleApp:22",
+            "com.example.sample.ExampleApp#fib(I)I",
+            "com.example.sample.ExampleApp:30 every 3 thread main suspend thread if i == 5 && this.counter > 3"
+    })
+    public String spec;
+
+    @Benchmark
+    public BreakpointSpec parse() {
+        return BreakpointSpec.parse(spec);
+    }
+}
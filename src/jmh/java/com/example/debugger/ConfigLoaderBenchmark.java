@@ -0,0 +1,52 @@
+package com.example.debugger;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** {@link ConfigLoader#load} on generated configs mixing line, method, logpoint and filtered breakpoints. */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigLoaderBenchmark {
+    @Param({"100", "10000"})
+    public int breakpoints;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void write() throws IOException {
+        StringBuilder b = new StringBuilder("{\"pauseOnException\":\"uncaught\",\"breakpoints\":[\n");
+        for (int i = 0; i < breakpoints; i++) {
+            if (i > 0) b.append(",\n");
+            String cls = "\"class\":\"com.acme.svc" + (i % 50) + ".Service" + i + "\"";
+            switch (i % 4) {
+                case 0 -> b.append('{').append(cls).append(",\"line\":").append(10 + i % 500).append('}');
+                case 1 -> b.append('{').append(cls).append(",\"method\":\"handle\",\"signature\":\"(Ljava/lang/String;)V\"}");
+                case 2 -> b.append('{').append(cls).append(",\"line\":").append(20 + i % 300)
+                        .append(",\"log\":\"id={id} state={this.state}\"}");
+                default -> b.append('{').append(cls).append(",\"line\":").append(30 + i % 200)
+                        .append(",\"condition\":\"i == 5 && this.count > 3\",\"every\":10,\"suspend\":\"thread\"}");
+            }
+        }
+        b.append("\n],\"exceptions\":[{\"type\":\"java.lang.IllegalStateException\",\"caught\":true}]}");
+        file = Files.createTempFile("bp-bench", ".json");
+        Files.writeString(file, b);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public ConfigLoader.Config load() throws IOException {
+        return ConfigLoader.load(file);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.debugger;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Events per second the caller's (event) thread gets into the log, before and after the asynchronous
+ * {@link EventLog}. {@code sync} is the old path: format the record and write and flush it on the
+ * caller. {@code drop} and {@code block} are the two backpressure modes. One op is one record
+ * accepted: with {@code drop} an append refused by a full buffer is retried and counted in
+ * {@code dropped}, not scored, so the score is what the writer sustains, not how fast refusals are.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EventLogBenchmark {
+    @Param({"sync", "drop", "block"})
+    public String mode;
+
+    /** Refused appends per second, next to the score. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Refused {
+        public long dropped;
+    }
+
+    private Path file;
+    private EventLog log;         // drop / block
+    private BufferedWriter sync;  // sync
+    private final Map<String, ?> fields = Map.of("location", "com.example.sample.ExampleApp.loopBody(ExampleApp.java:22)");
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        file = Files.createTempFile("events-bench", ".jsonl");
+        if (mode.equals("sync")) {
+            sync = Files.newBufferedWriter(file);
+            return;
+        }
+        EventLog.Options o = new EventLog.Options();
+        o.backpressure = EventLog.Backpressure.valueOf(mode);
+        log = EventLog.open(file, o);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        if (sync != null) {
+            sync.close();
+        } else {
+            log.close();
+            System.out.printf("%nenqueued=%d dropped=%d written=%d commits=%d%n",
+                    log.enqueued(), log.dropped(), log.written(), log.commits());
+        }
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void append(Refused refused) throws IOException {
+        if (sync != null) {
+            sync.write(EventLog.toJson(Instant.now(), "BreakpointEvent", fields));
+            sync.newLine();
+            sync.flush(); // per event, as Debugger.log did before the writer thread
+            return;
+        }
+        while (!log.append("BreakpointEvent", fields)) {
+            refused.dropped++;
+            Thread.onSpinWait();
+        }
+    }
+}
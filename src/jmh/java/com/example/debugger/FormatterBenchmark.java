@@ -0,0 +1,95 @@
+package com.example.debugger;
+
+import com.sun.jdi.*;
+import com.sun.jdi.event.*;
+import com.sun.jdi.request.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link VariableFormatter} and the REPL inspection paths against a thread parked in
+ * {@link HotLoopTarget#step}. Everything but the int case is a JDWP round-trip, so these numbers are
+ * dominated by the connection, which is the point: they show how many round-trips a command costs.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FormatterBenchmark {
+    private TargetVm target;
+    private ThreadReference thread;
+    private Value intValue;
+    private StringReference stringValue;
+    private ArrayReference arrayValue;
+    private ObjectReference thisValue;
+    private final PrintStream sink = new PrintStream(OutputStream.nullOutputStream());
+
+    @Setup(Level.Trial)
+    public void park() throws Exception {
+        target = TargetVm.launch(HotLoopTarget.class);
+        BreakpointRequest bp = target.erm.createBreakpointRequest(target.line("step", 2));
+        bp.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+        bp.enable();
+        target.vm.resume();
+        EventSet set = target.next();
+        target.erm.deleteEventRequest(bp); // the thread stays parked for the whole trial
+        thread = ((BreakpointEvent) set.iterator().next()).thread();
+
+        StackFrame f = thread.frame(0);
+        intValue = f.getValue(f.visibleVariableByName("n"));
+        stringValue = (StringReference) f.getValue(f.visibleVariableByName("label"));
+        thisValue = f.thisObject();
+        arrayValue = (ArrayReference) thisValue.getValue(target.mainType.fieldByName("window"));
+    }
+
+    @TearDown(Level.Trial)
+    public void exit() {
+        target.close();
+    }
+
+    @Benchmark
+    public String formatInt() {
+        return VariableFormatter.format(intValue);
+    }
+
+    @Benchmark
+    public String formatString() {
+        return VariableFormatter.format(stringValue);
+    }
+
+    @Benchmark
+    public String formatArray() {
+        return VariableFormatter.format(arrayValue);
+    }
+
+    @Benchmark
+    public String formatObject() {
+        return VariableFormatter.format(thisValue);
+    }
+
+    @Benchmark
+    public List<String> formatFields() {
+        return VariableFormatter.formatFields(thisValue);
+    }
+
+    @Benchmark
+    public void printLocals() {
+        StackPrinter.printLocals(thread, target.meta, sink);
+    }
+
+    @Benchmark
+    public void printStack() {
+        StackPrinter.print(thread, target.meta, sink);
+    }
+
+    @Benchmark
+    public void snapshotThis() throws Exception {
+        ObjectSnapshot.write(thisValue, new ObjectSnapshot.Budget(), target.meta, sink);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.debugger;
+
+/**
+ * Synthetic debuggee for the end-to-end benchmarks: calls {@link #step} in a tight loop forever, so
+ * a breakpoint in it is hit as fast as the debugger can resume. Benchmarks locate lines through the
+ * method's line table, never by number.
+ */
+public final class HotLoopTarget {
+    private long total;
+    private final int[] window = new int[64];
+
+    public static void main(String[] args) {
+        HotLoopTarget t = new HotLoopTarget();
+        for (int i = 0; ; i++) {
+            t.step(i);
+        }
+    }
+
+    long step(int i) {
+        int n = i & 1023;
+        String label = "n=" + n;
+        window[n & 63] = label.length();
+        total += helper(n);
+        return total;
+    }
+
+    private int helper(int n) {
+        return n * 31;
+    }
+}
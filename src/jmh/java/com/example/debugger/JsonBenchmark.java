@@ -0,0 +1,46 @@
+package com.example.debugger;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Serialization cost per event log record: {@link EventLog#toJson} and {@link EventLog#escape}. */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonBenchmark {
+    private final Instant ts = Instant.now();
+    private final Map<String, ?> breakpoint = Map.of("location", "com.example.sample.ExampleApp.loopBody(ExampleApp.java:22)");
+    private final Map<String, ?> logpoint = Map.of(
+            "location", "com.example.sample.ExampleApp.loopBody(ExampleApp.java:22)",
+            "thread", "main",
+            "message", "n=2, f=13, counter=3 msg=\"n=2\"\nnext line",
+            "captureMicros", 412L);
+    private final String plain = "com.example.sample.ExampleApp.loopBody(ExampleApp.java:22) n=2 f=13 counter=3";
+    private final String dirty = "path=C:\\tmp\\x \"quoted\"\n\ttab\u0001ctl";
+
+    @Benchmark
+    public String toJsonBreakpoint() {
+        return EventLog.toJson(ts, "BreakpointEvent", breakpoint);
+    }
+
+    @Benchmark
+    public String toJsonLogpoint() {
+        return EventLog.toJson(ts, "Logpoint", logpoint);
+    }
+
+    @Benchmark
+    public String escapePlain() {
+        return EventLog.escape(plain);
+    }
+
+    @Benchmark
+    public String escapeDirty() {
+        return EventLog.escape(dirty);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.debugger;
+
+import com.sun.jdi.*;
+import com.sun.jdi.connect.*;
+import com.sun.jdi.event.*;
+import com.sun.jdi.request.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/** A debuggee launched on the benchmark's own classpath, held at class prepare of its main class. */
+final class TargetVm implements AutoCloseable {
+    final VirtualMachine vm;
+    final EventRequestManager erm;
+    final MetadataCache meta = new MetadataCache();
+    final ReferenceType mainType;
+
+    private TargetVm(VirtualMachine vm, ReferenceType mainType) {
+        this.vm = vm;
+        this.erm = vm.eventRequestManager();
+        this.mainType = mainType;
+    }
+
+    static TargetVm launch(Class<?> main) throws Exception {
+        LaunchingConnector c = Bootstrap.virtualMachineManager().defaultConnector();
+        Map<String, Connector.Argument> args = c.defaultArguments();
+        args.get("main").setValue(main.getName());
+        args.get("options").setValue("-classpath " + System.getProperty("java.class.path"));
+        VirtualMachine vm = c.launch(args);
+        drain(vm.process().getInputStream());
+        drain(vm.process().getErrorStream());
+
+        ClassPrepareRequest cpr = vm.eventRequestManager().createClassPrepareRequest();
+        cpr.addClassFilter(main.getName());
+        cpr.setSuspendPolicy(EventRequest.SUSPEND_ALL);
+        cpr.enable();
+        while (true) {
+            EventSet set = vm.eventQueue().remove();
+            for (Event e : set) {
+                if (e instanceof ClassPrepareEvent cpe) {
+                    vm.eventRequestManager().deleteEventRequest(cpr);
+                    return new TargetVm(vm, cpe.referenceType()); // left suspended
+                }
+            }
+            set.resume();
+        }
+    }
+
+    Method method(String name) {
+        return meta.methodsByName(mainType, name, null).get(0);
+    }
+
+    /** The {@code index}-th line of {@code method}'s line table (0 = first line). */
+    Location line(String method, int index) throws AbsentInformationException {
+        List<Location> lines = method(method).allLineLocations();
+        return lines.get(index);
+    }
+
+    /** Blocks for the next event set that carries a breakpoint or method entry event. */
+    EventSet next() throws InterruptedException {
+        while (true) {
+            EventSet set = vm.eventQueue().remove();
+            for (Event e : set) {
+                if (e instanceof LocatableEvent) return set;
+                if (e instanceof VMDisconnectEvent) throw new IllegalStateException("target exited");
+            }
+            set.resume();
+        }
+    }
+
+    @Override public void close() {
+        try { vm.exit(0); } catch (Exception ignored) {}
+    }
+
+    private static void drain(InputStream in) {
+        Thread t = new Thread(() -> {
+            try { in.transferTo(OutputStream.nullOutputStream()); } catch (Exception ignored) {}
+        }, "target-output");
+        t.setDaemon(true);
+        t.start();
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.debugger;
+
+import com.sun.jdi.request.ClassPrepareRequest;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.EventRequestManager;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Every breakpoint spec the user asked for, indexed by class name so a ClassPrepareEvent finds its
+ * specs without scanning them all. Class names may be patterns: {@code com.acme.*} (prefix),
+ * {@code *Service} (suffix), or anything else with {@code *} (regex, scanned). Prefix and suffix
+ * lookups probe one hash map per distinct pattern length.
+ * <p>
+ * Specs stay registered after they are installed, because the same class may be loaded again by
+ * another class loader. The registry keeps one ClassPrepareRequest per distinct class filter; JDI
+ * ANDs several filters on one request, so they cannot share. Filters covered by an active wildcard
+ * filter get no request of their own.
+ */
+public final class BreakpointRegistry {
+    private final EventRequestManager erm;
+
+    private final Map<String, List<BreakpointSpec>> exact = new HashMap<>();
+    private final Map<String, List<BreakpointSpec>> prefixes = new HashMap<>(); // "com.acme." for com.acme.*
+    private final Map<String, List<BreakpointSpec>> suffixes = new HashMap<>(); // "Service" for *Service
+    private final TreeMap<Integer, Integer> prefixLengths = new TreeMap<>();    // length -> patterns
+    private final TreeMap<Integer, Integer> suffixLengths = new TreeMap<>();
+    private final Map<String, List<BreakpointSpec>> general = new HashMap<>();
+    private final Map<String, Pattern> compiled = new HashMap<>();
+
+    private final Map<String, Integer> filterUsers = new HashMap<>();
+    private final Map<String, ClassPrepareRequest> requests = new HashMap<>();
+    private int size;
+
+    public BreakpointRegistry(EventRequestManager erm) {
+        this.erm = erm;
+    }
+
+    public static boolean isPattern(String className) {
+        return className.indexOf('*') >= 0;
+    }
+
+    /** {@code *} matches any run of characters, dots included. */
+    public static boolean matches(String pattern, String className) {
+        if (!isPattern(pattern)) return pattern.equals(className);
+        return toRegex(pattern).matcher(className).matches();
+    }
+
+    private static Pattern toRegex(String pattern) {
+        StringBuilder b = new StringBuilder();
+        String[] parts = pattern.split("\\*", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) b.append(".*");
+            if (!parts[i].isEmpty()) b.append(Pattern.quote(parts[i]));
+        }
+        return Pattern.compile(b.toString());
+    }
+
+    public synchronized void add(BreakpointSpec spec) {
+        String cls = spec.className;
+        switch (shape(cls)) {
+            case EXACT -> exact.computeIfAbsent(cls, k -> new ArrayList<>()).add(spec);
+            case PREFIX -> bucket(prefixes, prefixLengths, cls.substring(0, cls.length() - 1)).add(spec);
+            case SUFFIX -> bucket(suffixes, suffixLengths, cls.substring(1)).add(spec);
+            case GENERAL -> {
+                general.computeIfAbsent(cls, k -> new ArrayList<>()).add(spec);
+                compiled.computeIfAbsent(cls, BreakpointRegistry::toRegex);
+            }
+        }
+        size++;
+        String filter = filterFor(cls);
+        if (filterUsers.merge(filter, 1, Integer::sum) == 1) {
+            // a new wildcard may stand in for filters that have their own request so far
+            sync(isPattern(filter) ? new ArrayList<>(filterUsers.keySet()) : List.of(filter));
+        }
+    }
+
+    private enum Shape { EXACT, PREFIX, SUFFIX, GENERAL }
+
+    private static Shape shape(String cls) {
+        int first = cls.indexOf('*');
+        if (first < 0) return Shape.EXACT;
+        if (first != cls.lastIndexOf('*')) return Shape.GENERAL;
+        if (first == cls.length() - 1) return Shape.PREFIX;
+        return first == 0 ? Shape.SUFFIX : Shape.GENERAL;
+    }
+
+    private static List<BreakpointSpec> bucket(Map<String, List<BreakpointSpec>> index,
+                                               TreeMap<Integer, Integer> lengths, String key) {
+        List<BreakpointSpec> l = index.get(key);
+        if (l == null) {
+            index.put(key, l = new ArrayList<>());
+            lengths.merge(key.length(), 1, Integer::sum);
+        }
+        return l;
+    }
+
+    /** Removes every spec at {@code location} ({@link BreakpointSpec#location()}) and returns them. */
+    public synchronized List<BreakpointSpec> remove(String location) {
+        return remove(BreakpointSpec.parse(location).className, s -> s.location().equals(location), false);
+    }
+
+    /** Removes one spec equal to {@code spec} and returns the registered instance, or null if none is. */
+    public synchronized BreakpointSpec remove(BreakpointSpec spec) {
+        List<BreakpointSpec> removed = remove(spec.className, spec::equals, true);
+        return removed.isEmpty() ? null : removed.get(0);
+    }
+
+    private List<BreakpointSpec> remove(String cls, Predicate<BreakpointSpec> which, boolean firstOnly) {
+        Shape shape = shape(cls);
+        String key = switch (shape) {
+            case PREFIX -> cls.substring(0, cls.length() - 1);
+            case SUFFIX -> cls.substring(1);
+            default -> cls;
+        };
+        Map<String, List<BreakpointSpec>> index = switch (shape) {
+            case EXACT -> exact;
+            case PREFIX -> prefixes;
+            case SUFFIX -> suffixes;
+            case GENERAL -> general;
+        };
+        List<BreakpointSpec> removed = new ArrayList<>();
+        List<BreakpointSpec> bucket = index.get(key);
+        if (bucket == null) return removed;
+        for (Iterator<BreakpointSpec> it = bucket.iterator(); it.hasNext(); ) {
+            BreakpointSpec s = it.next();
+            if (which.test(s)) {
+                it.remove();
+                removed.add(s);
+                if (firstOnly) break;
+            }
+        }
+        if (bucket.isEmpty()) {
+            index.remove(key);
+            if (shape == Shape.PREFIX) decrement(prefixLengths, key.length());
+            if (shape == Shape.SUFFIX) decrement(suffixLengths, key.length());
+            if (shape == Shape.GENERAL) compiled.remove(cls);
+        }
+        size -= removed.size();
+
+        String filter = filterFor(cls);
+        int left = filterUsers.getOrDefault(filter, 0) - removed.size();
+        if (left > 0) {
+            filterUsers.put(filter, left);
+        } else if (filterUsers.remove(filter) != null) {
+            List<String> affected = new ArrayList<>(List.of(filter));
+            if (isPattern(filter)) affected.addAll(filterUsers.keySet()); // may uncover filters it stood in for
+            sync(affected);
+        }
+        return removed;
+    }
+
+    private static void decrement(TreeMap<Integer, Integer> lengths, int len) {
+        if (lengths.merge(len, -1, Integer::sum) == 0) lengths.remove(len);
+    }
+
+    /** Specs whose class name or pattern matches {@code className}. */
+    public synchronized List<BreakpointSpec> matching(String className) {
+        List<BreakpointSpec> out = new ArrayList<>(exact.getOrDefault(className, List.of()));
+        for (int len : prefixLengths.headMap(className.length(), true).keySet()) {
+            List<BreakpointSpec> l = prefixes.get(className.substring(0, len));
+            if (l != null) out.addAll(l);
+        }
+        for (int len : suffixLengths.headMap(className.length(), true).keySet()) {
+            List<BreakpointSpec> l = suffixes.get(className.substring(className.length() - len));
+            if (l != null) out.addAll(l);
+        }
+        for (var e : general.entrySet()) {
+            if (compiled.get(e.getKey()).matcher(className).matches()) out.addAll(e.getValue());
+        }
+        return out;
+    }
+
+    public synchronized List<BreakpointSpec> all() {
+        List<BreakpointSpec> out = new ArrayList<>(size);
+        exact.values().forEach(out::addAll);
+        prefixes.values().forEach(out::addAll);
+        suffixes.values().forEach(out::addAll);
+        general.values().forEach(out::addAll);
+        return out;
+    }
+
+    public synchronized int size() { return size; }
+
+    public synchronized int requestCount() { return requests.size(); }
+
+    /**
+     * The ClassPrepareRequest filter for a class name or pattern. JDI filters take one {@code *} at
+     * the start or the end, so other patterns are widened and narrowed again by {@link #matching}.
+     */
+    static String filterFor(String className) {
+        int first = className.indexOf('*');
+        if (first < 0) return className;
+        int last = className.lastIndexOf('*');
+        if (first == last && (first == 0 || first == className.length() - 1)) return className;
+        if (first > 0) return className.substring(0, first) + "*";
+        if (last < className.length() - 1) return "*" + className.substring(last + 1);
+        return "*";
+    }
+
+    /** True if a class matching {@code filter} always matches {@code by}. */
+    private static boolean covers(String by, String filter) {
+        if (by.equals(filter) || !isPattern(by)) return false;
+        if (by.equals("*")) return true;
+        if (by.endsWith("*")) {
+            return !filter.startsWith("*") && filter.startsWith(by.substring(0, by.length() - 1));
+        }
+        return !filter.endsWith("*") && filter.endsWith(by.substring(1));
+    }
+
+    private boolean covered(String filter) {
+        for (String other : filterUsers.keySet()) {
+            if (covers(other, filter)) return true;
+        }
+        return false;
+    }
+
+    /** Brings the requests for {@code filters} in line: one per active filter no wildcard covers. */
+    private void sync(Collection<String> filters) {
+        for (String f : filters) {
+            boolean wanted = filterUsers.containsKey(f) && !covered(f);
+            ClassPrepareRequest r = requests.get(f);
+            if (wanted && r == null) {
+                r = erm.createClassPrepareRequest();
+                if (!f.equals("*")) r.addClassFilter(f);
+                r.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD); // only the preparing thread waits for installs
+                r.enable();
+                requests.put(f, r);
+            } else if (!wanted && r != null) {
+                erm.deleteEventRequest(r);
+                requests.remove(f);
+            }
+        }
+    }
+
+    @Override public synchronized String toString() {
+        return "specs=" + size + " exact=" + exact.size() + " patterns="
+                + (prefixes.size() + suffixes.size() + general.size()) + " prepareRequests=" + requests.size();
+    }
+}
@@ -3,50 +3,205 @@ package com.example.debugger;
 import java.util.Objects;
 
 public final class BreakpointSpec {
-    public enum Kind { LINE, METHOD }
+    public enum Kind { LINE, METHOD, ACCESS, MODIFICATION }
 
     public final Kind kind;
     public final String className;
     public final Integer line;       // if LINE
     public final String methodName;  // if METHOD
+    public final String signature;   // if METHOD; JNI signature like "(I)I", null = all overloads
+    public final String fieldName;   // if ACCESS / MODIFICATION
+    public final String log;         // if logpoint: message template like "n={n}", null = suspend and open REPL
+    public final String condition;   // optional; only hits where it evaluates to true count
+    public final int hitCount;       // optional; fire on the Nth (counted) hit only, 0 = off
+    public final int every;          // optional; fire on every Nth (counted) hit, 0 = off
+    public final String thread;      // optional; only hits on the thread with this name
+    public final SuspendPolicy suspend; // optional; null = debugger default
 
-    private BreakpointSpec(Kind kind, String className, Integer line, String methodName) {
+    private BreakpointSpec(Kind kind, String className, Integer line, String methodName, String signature,
+                           String fieldName, String log, String condition, int hitCount, int every, String thread,
+                           SuspendPolicy suspend) {
         this.kind = kind;
         this.className = className;
         this.line = line;
         this.methodName = methodName;
+        this.signature = signature;
+        this.fieldName = fieldName;
+        this.log = log;
+        this.condition = condition;
+        this.hitCount = hitCount;
+        this.every = every;
+        this.thread = thread;
+        this.suspend = suspend;
+    }
+
+    /** Turns this breakpoint into a logpoint: renders {@code template}, logs it and resumes without a REPL. */
+    public BreakpointSpec withLog(String template) {
+        if (isWatch()) throw new IllegalArgumentException("Watchpoints record changes, they take no log template: " + location());
+        LogTemplate.compile(template); // validate early
+        return new BreakpointSpec(kind, className, line, methodName, signature, fieldName, template, condition, hitCount, every, thread, suspend);
+    }
+
+    public BreakpointSpec withCondition(String expr) {
+        Expression.parse(expr); // validate early
+        return new BreakpointSpec(kind, className, line, methodName, signature, fieldName, log, expr.trim(), hitCount, every, thread, suspend);
+    }
+
+    public BreakpointSpec withHitCount(int n) {
+        if (n < 1) throw new IllegalArgumentException("hitCount must be >= 1: " + n);
+        return new BreakpointSpec(kind, className, line, methodName, signature, fieldName, log, condition, n, every, thread, suspend);
+    }
+
+    public BreakpointSpec withEvery(int n) {
+        if (n < 1) throw new IllegalArgumentException("every must be >= 1: " + n);
+        return new BreakpointSpec(kind, className, line, methodName, signature, fieldName, log, condition, hitCount, n, thread, suspend);
+    }
+
+    public BreakpointSpec withThread(String threadName) {
+        return new BreakpointSpec(kind, className, line, methodName, signature, fieldName, log, condition, hitCount, every, threadName, suspend);
+    }
+
+    public BreakpointSpec withSuspend(SuspendPolicy policy) {
+        return new BreakpointSpec(kind, className, line, methodName, signature, fieldName, log, condition, hitCount, every, thread, policy);
+    }
+
+    /** Field read / write watchpoint ("on read" or "on write", the default). */
+    public BreakpointSpec withKind(Kind watch) {
+        if (!isWatch() || (watch != Kind.ACCESS && watch != Kind.MODIFICATION)) {
+            throw new IllegalArgumentException("'on read|write' applies to field watchpoints only: " + location());
+        }
+        return new BreakpointSpec(watch, className, line, methodName, signature, fieldName, log, condition, hitCount, every, thread, suspend);
+    }
+
+    public boolean isWatch() {
+        return kind == Kind.ACCESS || kind == Kind.MODIFICATION;
+    }
+
+    public boolean isLogpoint() {
+        return log != null;
+    }
+
+    /** True when some hits are skipped, either inside the target VM or by the event loop. */
+    public boolean isFiltered() {
+        return condition != null || hitCount > 0 || every > 0 || thread != null;
     }
 
     public static BreakpointSpec line(String className, int line) {
-        return new BreakpointSpec(Kind.LINE, className, line, null);
+        return new BreakpointSpec(Kind.LINE, className, line, null, null, null, null, null, 0, 0, null, null);
     }
 
     public static BreakpointSpec method(String className, String methodName) {
-        return new BreakpointSpec(Kind.METHOD, className, null, methodName);
+        return method(className, methodName, null);
     }
 
-    /** Accepts "pkg.Class:42" or "pkg.Class#method" */
+    public static BreakpointSpec method(String className, String methodName, String signature) {
+        if (signature != null && !signature.startsWith("(")) {
+            throw new IllegalArgumentException("Invalid method signature: " + signature);
+        }
+        return new BreakpointSpec(Kind.METHOD, className, null, methodName, signature, null, null, null, 0, 0, null, null);
+    }
+
+    /** Watchpoint on writes ({@link Kind#MODIFICATION}) or reads ({@link Kind#ACCESS}) of a field. */
+    public static BreakpointSpec field(String className, String fieldName, boolean access) {
+        if (className.isEmpty() || fieldName.isEmpty()) throw new IllegalArgumentException("Invalid field: " + className + "." + fieldName);
+        return new BreakpointSpec(access ? Kind.ACCESS : Kind.MODIFICATION, className, null, null, null, fieldName,
+                null, null, 0, 0, null, null);
+    }
+
+    /**
+     * Accepts "pkg.Class:42", "pkg.Class#method", "pkg.Class#method(Ljava/lang/String;)V" or the field
+     * watchpoint "pkg.Class.field", where the class may be a pattern such as "com.acme.*" or "*Service",
+     * optionally followed by "on read|write" (watchpoints), "hit N", "every N", "thread NAME",
+     * "suspend all|thread|none" and, last, "if CONDITION".
+     */
     public static BreakpointSpec parse(String spec) {
         Objects.requireNonNull(spec, "spec");
-        spec = spec.trim();
+        String[] parts = spec.trim().split("\\s+", 2);
+        BreakpointSpec bp = parseLocation(parts[0]);
+        String rest = parts.length > 1 ? parts[1].trim() : "";
+        while (!rest.isEmpty()) {
+            String[] kv = rest.split("\\s+", 3);
+            if (kv[0].equals("if")) {
+                String cond = rest.substring(2).trim();
+                if (cond.isEmpty()) throw new IllegalArgumentException("Missing condition after 'if': " + spec);
+                return bp.withCondition(cond);
+            }
+            if (kv.length < 2) throw new IllegalArgumentException("Missing value for '" + kv[0] + "': " + spec);
+            bp = switch (kv[0]) {
+                case "hit" -> bp.withHitCount(Integer.parseInt(kv[1]));
+                case "every" -> bp.withEvery(Integer.parseInt(kv[1]));
+                case "thread" -> bp.withThread(kv[1]);
+                case "suspend" -> bp.withSuspend(SuspendPolicy.valueOf(kv[1]));
+                case "on" -> bp.withKind(switch (kv[1]) {
+                    case "read" -> Kind.ACCESS;
+                    case "write" -> Kind.MODIFICATION;
+                    default -> throw new IllegalArgumentException("Expected 'on read' or 'on write': " + spec);
+                });
+                default -> throw new IllegalArgumentException("Unknown breakpoint option '" + kv[0] + "': " + spec);
+            };
+            rest = kv.length > 2 ? kv[2] : "";
+        }
+        return bp;
+    }
+
+    private static BreakpointSpec parseLocation(String spec) {
         int hash = spec.indexOf('#');
         int colon = spec.lastIndexOf(':');
         if (hash > 0) {
             String cls = spec.substring(0, hash).trim();
             String method = spec.substring(hash + 1).trim();
+            String sig = null;
+            int paren = method.indexOf('(');
+            if (paren >= 0) {
+                sig = method.substring(paren).trim();
+                method = method.substring(0, paren).trim();
+            }
             if (cls.isEmpty() || method.isEmpty()) throw new IllegalArgumentException("Invalid method breakpoint: " + spec);
-            return method(cls, method);
+            return method(cls, method, sig);
         } else if (colon > 0) {
             String cls = spec.substring(0, colon).trim();
             String lineStr = spec.substring(colon + 1).trim();
             return line(cls, Integer.parseInt(lineStr));
+        } else if (spec.lastIndexOf('.') > 0) {
+            int dot = spec.lastIndexOf('.');
+            return field(spec.substring(0, dot).trim(), spec.substring(dot + 1).trim(), false);
         }
-        throw new IllegalArgumentException("Expected Class:line or Class#method, got: " + spec);
+        throw new IllegalArgumentException("Expected Class:line, Class#method or Class.field, got: " + spec);
+    }
+
+    /** The location part alone, as accepted by {@link #parse}: "Class:42", "Class#method(sig)" or "Class.field". */
+    public String location() {
+        return switch (kind) {
+            case LINE -> className + ":" + line;
+            case METHOD -> className + "#" + methodName + (signature != null ? signature : "");
+            case ACCESS, MODIFICATION -> className + "." + fieldName;
+        };
+    }
+
+    /** Value equality over every field, so a reloaded config can be diffed against the installed one. */
+    @Override public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BreakpointSpec s)) return false;
+        return kind == s.kind && className.equals(s.className) && Objects.equals(line, s.line)
+                && Objects.equals(methodName, s.methodName) && Objects.equals(signature, s.signature)
+                && Objects.equals(fieldName, s.fieldName) && Objects.equals(log, s.log)
+                && Objects.equals(condition, s.condition) && hitCount == s.hitCount && every == s.every
+                && Objects.equals(thread, s.thread) && suspend == s.suspend;
+    }
+
+    @Override public int hashCode() {
+        return Objects.hash(kind, className, line, methodName, signature, fieldName, log, condition, hitCount, every, thread, suspend);
     }
 
     @Override public String toString() {
-        return kind == Kind.LINE
-                ? className + ":" + line
-                : className + "#" + methodName;
+        StringBuilder b = new StringBuilder(location());
+        if (kind == Kind.ACCESS) b.append(" on read");
+        if (hitCount > 0) b.append(" hit ").append(hitCount);
+        if (every > 0) b.append(" every ").append(every);
+        if (thread != null) b.append(" thread ").append(thread);
+        if (suspend != null) b.append(" suspend ").append(suspend);
+        if (condition != null) b.append(" if ").append(condition);
+        if (log != null) b.append(" log \"").append(log).append('"');
+        return b.toString();
     }
 }
@@ -1,6 +1,7 @@
 package com.example.debugger;
 
-import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.*;
 import java.nio.file.*;
@@ -12,27 +13,131 @@ public final class ConfigLoader {
     public static final class Config {
         public ExceptionPolicy pauseOnException = ExceptionPolicy.uncaught;
         public List<BreakpointSpec> breakpoints = new ArrayList<>();
+        public List<ExceptionRule> exceptions = new ArrayList<>();
+        public ExceptionStats.Options exceptionAnalytics = new ExceptionStats.Options();
     }
 
+    /**
+     * Streams the file with a {@link JsonReader}, so a config with tens of thousands of breakpoints
+     * never exists as a JSON tree; only the finished specs are kept. Unknown keys are skipped.
+     */
     public static Config load(Path path) throws IOException {
-        try (Reader r = Files.newBufferedReader(path)) {
-            JsonObject root = JsonParser.parseReader(r).getAsJsonObject();
+        try (JsonReader in = new JsonReader(Files.newBufferedReader(path))) {
             Config cfg = new Config();
-            if (root.has("pauseOnException")) {
-                cfg.pauseOnException = ExceptionPolicy.valueOf(root.get("pauseOnException").getAsString());
-            }
-            if (root.has("breakpoints")) {
-                for (JsonElement e : root.getAsJsonArray("breakpoints")) {
-                    JsonObject o = e.getAsJsonObject();
-                    String cls = o.get("class").getAsString();
-                    if (o.has("line")) {
-                        cfg.breakpoints.add(BreakpointSpec.line(cls, o.get("line").getAsInt()));
-                    } else if (o.has("method")) {
-                        cfg.breakpoints.add(BreakpointSpec.method(cls, o.get("method").getAsString()));
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "pauseOnException" -> cfg.pauseOnException = ExceptionPolicy.valueOf(in.nextString());
+                    case "breakpoints" -> {
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            BreakpointSpec spec = breakpoint(in);
+                            if (spec != null) cfg.breakpoints.add(spec);
+                        }
+                        in.endArray();
+                    }
+                    case "exceptions" -> {
+                        in.beginArray();
+                        while (in.hasNext()) cfg.exceptions.add(exceptionRule(in));
+                        in.endArray();
                     }
+                    case "exceptionAnalytics" -> {
+                        ExceptionStats.Options a = cfg.exceptionAnalytics;
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            switch (in.nextName()) {
+                                case "summaryMs" -> a.summaryMillis = in.nextLong();
+                                case "ratePerKey" -> a.ratePerKey = in.nextInt();
+                                case "stackDepth" -> a.stackDepth = in.nextInt();
+                                default -> in.skipValue();
+                            }
+                        }
+                        in.endObject();
+                    }
+                    default -> in.skipValue();
                 }
             }
+            in.endObject();
             return cfg;
         }
     }
+
+    /** One "breakpoints" entry; keys may come in any order. Null for an entry without a location. */
+    private static BreakpointSpec breakpoint(JsonReader in) throws IOException {
+        String where = in.getPath();
+        String cls = null, method = null, signature = null, field = null, on = "write";
+        String log = null, condition = null, thread = null, suspend = null;
+        Integer line = null, hitCount = null, every = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "class" -> cls = in.nextString();
+                case "line" -> line = in.nextInt();
+                case "method" -> method = in.nextString();
+                case "signature" -> signature = in.nextString();
+                case "field" -> field = in.nextString();
+                case "on" -> on = in.nextString();
+                case "log" -> log = in.nextString();
+                case "condition" -> condition = in.nextString();
+                case "hitCount" -> hitCount = in.nextInt();
+                case "every" -> every = in.nextInt();
+                case "thread" -> thread = in.nextString();
+                case "suspend" -> suspend = in.nextString();
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        if (cls == null) throw new IllegalArgumentException("Breakpoint without \"class\" at " + where);
+        BreakpointSpec spec;
+        if (line != null) {
+            spec = BreakpointSpec.line(cls, line);
+        } else if (method != null) {
+            // "method" may carry its own signature: "greet(Ljava/lang/String;)V"
+            spec = signature != null ? BreakpointSpec.method(cls, method, signature) : BreakpointSpec.parse(cls + "#" + method);
+        } else if (field != null) {
+            if (!on.equals("read") && !on.equals("write")) throw new IllegalArgumentException("\"on\" must be read or write: " + on);
+            spec = BreakpointSpec.field(cls, field, on.equals("read"));
+        } else {
+            return null;
+        }
+        if (log != null) spec = spec.withLog(log);
+        if (condition != null) spec = spec.withCondition(condition);
+        if (hitCount != null) spec = spec.withHitCount(hitCount);
+        if (every != null) spec = spec.withEvery(every);
+        if (thread != null) spec = spec.withThread(thread);
+        if (suspend != null) spec = spec.withSuspend(SuspendPolicy.valueOf(suspend));
+        return spec;
+    }
+
+    private static ExceptionRule exceptionRule(JsonReader in) throws IOException {
+        String type = null;
+        boolean caught = true, uncaught = true, analytics = false;
+        SuspendPolicy suspend = null;
+        List<String> include = List.of(), exclude = List.of();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "type" -> type = in.nextString();
+                case "caught" -> caught = in.nextBoolean();
+                case "uncaught" -> uncaught = in.nextBoolean();
+                case "suspend" -> suspend = SuspendPolicy.valueOf(in.nextString());
+                case "include" -> include = strings(in);
+                case "exclude" -> exclude = strings(in);
+                case "analytics" -> analytics = in.nextBoolean();
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return new ExceptionRule(type, caught, uncaught, suspend, include, exclude, analytics);
+    }
+
+    /** A string or an array of strings. */
+    private static List<String> strings(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_ARRAY) return List.of(in.nextString());
+        List<String> out = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) out.add(in.nextString());
+        in.endArray();
+        return out;
+    }
 }
@@ -0,0 +1,148 @@
+package com.example.debugger;
+
+import com.example.debugger.ConfigLoader.Config;
+import com.sun.jdi.VMDisconnectedException;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Keeps the target in line with the {@code --bp} file while it runs. A {@link WatchService} on the
+ * file's directory wakes the {@code config-watch} thread, which parses the file again and applies
+ * only the difference to the config applied last: removed breakpoints and exception rules lose their
+ * requests, new ones get theirs, unchanged ones are not touched. Requests are created and deleted
+ * while the target runs; nothing is suspended. A file that does not parse (an editor halfway through
+ * a save) is reported and the previous config stays in force. Each reload prints and logs what
+ * changed, the requests touched and how long parsing and applying took.
+ * <p>
+ * Breakpoints, exception rules and {@code pauseOnException} are reloaded; {@code exceptionAnalytics}
+ * is read at start only.
+ */
+public final class ConfigWatcher {
+    private static final long SETTLE_MILLIS = 50; // editors save in several writes
+
+    /** What one reload changed. */
+    public record Reload(int breakpointsAdded, int breakpointsRemoved, int rulesAdded, int rulesRemoved,
+                         int requestsTouched, long parseMicros, long applyMicros) {
+        @Override public String toString() {
+            return "+" + breakpointsAdded + " -" + breakpointsRemoved + " breakpoint(s), +" + rulesAdded + " -" + rulesRemoved
+                    + " exception rule(s), " + requestsTouched + " request(s) touched, parse "
+                    + String.format("%.1fms apply %.1fms", parseMicros / 1e3, applyMicros / 1e3);
+        }
+    }
+
+    private final Debugger dbg;
+    private final Path file;
+    private final EventLog log; // may be null
+    private final PrintStream out;
+    private Config applied;
+    private WatchService watch;
+    private Thread thread;
+
+    public ConfigWatcher(Debugger dbg, Path file, Config applied, EventLog log, PrintStream out) {
+        this.dbg = dbg;
+        this.file = file.toAbsolutePath();
+        this.applied = applied;
+        this.log = log;
+        this.out = out;
+    }
+
+    public void start() throws IOException {
+        watch = file.getFileSystem().newWatchService();
+        // the directory, not the file: editors that save by renaming replace the file's inode
+        file.getParent().register(watch, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this::run, "config-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watch.take();
+                boolean ours = false;
+                for (WatchEvent<?> e : key.pollEvents()) {
+                    // OVERFLOW has no context: events were lost, so look anyway
+                    if (e.context() == null || file.getFileName().equals(e.context())) ours = true;
+                }
+                key.reset();
+                if (!ours) continue;
+                Thread.sleep(SETTLE_MILLIS);
+                for (WatchKey k; (k = watch.poll()) != null; ) { // the rest of the same save
+                    k.pollEvents();
+                    k.reset();
+                }
+                try {
+                    reload();
+                } catch (VMDisconnectedException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    out.println("[warn] config reload failed: " + e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    /** Parses the file and applies the difference; null if it does not parse (the old config stays). */
+    public synchronized Reload reload() {
+        long t0 = System.nanoTime();
+        Config next;
+        try {
+            next = ConfigLoader.load(file);
+        } catch (IOException | RuntimeException e) {
+            out.println("[config] " + file.getFileName() + " not reloaded: " + e.getMessage());
+            if (log != null) log.append("ConfigReload", Map.of("file", file.toString(), "error", String.valueOf(e.getMessage())));
+            return null;
+        }
+        long t1 = System.nanoTime();
+        List<BreakpointSpec> bpGone = minus(applied.breakpoints, next.breakpoints);
+        List<BreakpointSpec> bpNew = minus(next.breakpoints, applied.breakpoints);
+        List<ExceptionRule> rulesGone = minus(applied.exceptions, next.exceptions);
+        List<ExceptionRule> rulesNew = minus(next.exceptions, applied.exceptions);
+        int touched = 0;
+        // removals first, so a breakpoint whose options changed is replaced rather than doubled
+        for (BreakpointSpec spec : bpGone) touched += dbg.removeBreakpoint(spec);
+        for (ExceptionRule rule : rulesGone) touched += dbg.removeExceptionRule(rule);
+        for (ExceptionRule rule : rulesNew) touched += dbg.addExceptionRule(rule);
+        for (BreakpointSpec spec : bpNew) touched += dbg.addBreakpoint(spec);
+        if (next.pauseOnException != applied.pauseOnException) {
+            dbg.setExceptionPolicy(next.pauseOnException);
+            out.println("[config] pauseOnException " + applied.pauseOnException + " -> " + next.pauseOnException);
+        }
+        applied = next;
+        long t2 = System.nanoTime();
+        Reload r = new Reload(bpNew.size(), bpGone.size(), rulesNew.size(), rulesGone.size(), touched,
+                (t1 - t0) / 1_000, (t2 - t1) / 1_000);
+        out.println("[config] reloaded " + file.getFileName() + ": " + r);
+        if (log != null) {
+            log.append("ConfigReload", Map.of("file", file.toString(), "breakpointsAdded", r.breakpointsAdded(),
+                    "breakpointsRemoved", r.breakpointsRemoved(), "rulesAdded", r.rulesAdded(), "rulesRemoved", r.rulesRemoved(),
+                    "requestsTouched", r.requestsTouched(), "parseMicros", r.parseMicros(), "applyMicros", r.applyMicros()));
+        }
+        return r;
+    }
+
+    /** Multiset difference: each element of {@code a} not matched by an equal one in {@code b}. */
+    private static <T> List<T> minus(List<T> a, List<T> b) {
+        Map<T, Integer> left = new HashMap<>();
+        for (T t : b) left.merge(t, 1, Integer::sum);
+        List<T> out = new ArrayList<>();
+        for (T t : a) {
+            if (left.merge(t, -1, Integer::sum) < 0) out.add(t);
+        }
+        return out;
+    }
+
+    public void stop() {
+        if (thread != null) thread.interrupt();
+        try {
+            if (watch != null) watch.close();
+        } catch (IOException ignored) {
+            // closing anyway
+        }
+    }
+}
@@ -9,28 +9,55 @@ import java.util.*;
 
 public final class DebugCLI {
     public static void main(String[] args) throws Exception {
+        if (args.length > 1 && args[0].equals("query")) {
+            query(Path.of(args[1]), parseArgs(Arrays.copyOfRange(args, 2, args.length)));
+            return;
+        }
         Map<String, String> a = parseArgs(args);
         if (a.containsKey("help") || (!a.containsKey("launch") && !a.containsKey("attach"))) {
             printUsage();
             return;
         }
 
-        PrintWriter logWriter = null;
+        EventLog eventLog = null;
         if (a.containsKey("log")) {
-            logWriter = new PrintWriter(new BufferedWriter(new FileWriter(a.get("log"), true)));
+            EventLog.Options lo = new EventLog.Options();
+            if (a.containsKey("logFlushMs")) lo.flushMillis = Long.parseLong(a.get("logFlushMs"));
+            if (a.containsKey("logFlushEvents")) lo.flushEvents = Integer.parseInt(a.get("logFlushEvents"));
+            if (a.containsKey("logBuffer")) lo.capacity = Integer.parseInt(a.get("logBuffer"));
+            if (a.containsKey("logBackpressure")) lo.backpressure = EventLog.Backpressure.valueOf(a.get("logBackpressure"));
+            lo.fsync = a.containsKey("logFsync");
+            eventLog = EventLog.open(Path.of(a.get("log")), lo);
         }
 
-        Debugger dbg = new Debugger(logWriter);
-
-        // Config / breakpoints
-        if (a.containsKey("bp")) {
-            Config cfg = ConfigLoader.load(Path.of(a.get("bp")));
-            dbg.setExceptionPolicy(cfg.pauseOnException);
-            for (BreakpointSpec bp : cfg.breakpoints) dbg.addBreakpoint(bp);
+        if (a.containsKey("attach") && (a.get("attach").startsWith("@") || a.get("attach").matches(".*[,\\s].*"))) {
+            // several targets: same configuration everywhere, one event loop each, no REPL
+            Config cfg = a.containsKey("bp") ? ConfigLoader.load(Path.of(a.get("bp"))) : null;
+            Fleet.Options fo = new Fleet.Options();
+            if (a.containsKey("connectTimeoutMs")) fo.connectTimeoutMillis = Long.parseLong(a.get("connectTimeoutMs"));
+            try {
+                new Fleet(Fleet.parseTargets(a.get("attach")), eventLog, fo).run(dbg -> {
+                    dbg.setSnapshotBudget(snapshotBudget(a));
+                    if (a.containsKey("watchHistory")) dbg.setWatchHistory(Integer.parseInt(a.get("watchHistory")));
+                    dbg.setDefaultSuspend(SuspendPolicy.valueOf(a.getOrDefault("suspend", "thread")));
+                    configure(dbg, a, cfg);
+                });
+            } finally {
+                if (eventLog != null) eventLog.close();
+            }
+            return;
         }
-        if (a.containsKey("exception")) {
-            dbg.setExceptionPolicy(ExceptionPolicy.valueOf(a.get("exception")));
+
+        Debugger dbg = new Debugger(eventLog);
+        if (a.containsKey("record")) {
+            SessionRecorder.Options ro = new SessionRecorder.Options();
+            if (a.containsKey("recordSegmentMb")) ro.segmentBytes = Integer.parseInt(a.get("recordSegmentMb")) << 20;
+            dbg.setRecorder(SessionRecorder.open(Path.of(a.get("record")), ro));
         }
+        dbg.setSnapshotBudget(snapshotBudget(a));
+        if (a.containsKey("watchHistory")) dbg.setWatchHistory(Integer.parseInt(a.get("watchHistory")));
+        if (a.containsKey("stepExclude")) dbg.setStepExcludes(listFrom(a.get("stepExclude").replace(',', ' ')));
+        if (a.containsKey("stepLimit")) dbg.setStepLimit(Long.parseLong(a.get("stepLimit")));
 
         // Launch or attach
         if (a.containsKey("launch")) {
@@ -44,6 +71,28 @@ public final class DebugCLI {
             dbg.attach(hp[0], hp[1]);
         }
 
+        // Attached targets are usually live services: park only the event thread unless told otherwise.
+        dbg.setDefaultSuspend(SuspendPolicy.valueOf(a.getOrDefault("suspend", a.containsKey("attach") ? "thread" : "all")));
+
+        if (a.containsKey("profile")) {
+            SamplingProfiler.Options po = new SamplingProfiler.Options();
+            if (a.containsKey("profileHz")) po.hz = Integer.parseInt(a.get("profileHz"));
+            if (a.containsKey("profileDuration")) po.durationMillis = Long.parseLong(a.get("profileDuration")) * 1_000;
+            if (a.containsKey("profileTop")) po.top = Integer.parseInt(a.get("profileTop"));
+            if (a.containsKey("profileMaxNodes")) po.maxNodes = Integer.parseInt(a.get("profileMaxNodes"));
+            po.allThreads = a.containsKey("profileAllThreads");
+            po.collapsedOut = Path.of(a.getOrDefault("profileOut", "profile.collapsed"));
+            try {
+                dbg.profile(po);
+            } finally {
+                dbg.dispose();
+            }
+            return;
+        }
+
+        // Config / breakpoints (needs the VM's EventRequestManager)
+        configure(dbg, a, a.containsKey("bp") ? ConfigLoader.load(Path.of(a.get("bp"))) : null);
+
         // Reader: script or interactive
         BufferedReader reader = a.containsKey("script")
                 ? new BufferedReader(new FileReader(a.get("script")))
@@ -60,6 +109,100 @@ public final class DebugCLI {
         }
     }
 
+    private static ObjectSnapshot.Budget snapshotBudget(Map<String, String> a) {
+        ObjectSnapshot.Budget budget = new ObjectSnapshot.Budget();
+        if (a.containsKey("snapshotDepth")) budget.maxDepth = Integer.parseInt(a.get("snapshotDepth"));
+        if (a.containsKey("snapshotNodes")) budget.maxNodes = Integer.parseInt(a.get("snapshotNodes"));
+        if (a.containsKey("snapshotBytes")) budget.maxBytes = Long.parseLong(a.get("snapshotBytes"));
+        if (a.containsKey("snapshotElements")) budget.maxElements = Integer.parseInt(a.get("snapshotElements"));
+        return budget;
+    }
+
+    /** Everything after connecting: config file, exception handling, heap and method tracing. */
+    private static void configure(Debugger dbg, Map<String, String> a, Config cfg) {
+        ExceptionStats.Options ao = cfg != null ? cfg.exceptionAnalytics : new ExceptionStats.Options();
+        if (a.containsKey("exceptionSummaryMs")) ao.summaryMillis = Long.parseLong(a.get("exceptionSummaryMs"));
+        if (a.containsKey("exceptionRate")) ao.ratePerKey = Integer.parseInt(a.get("exceptionRate"));
+        dbg.setExceptionAnalytics(ao);
+        if (cfg != null) {
+            dbg.setExceptionPolicy(cfg.pauseOnException);
+            for (ExceptionRule rule : cfg.exceptions) dbg.addExceptionRule(rule);
+            for (BreakpointSpec bp : cfg.breakpoints) dbg.addBreakpoint(bp);
+            if (!a.containsKey("bpNoWatch")) dbg.watchConfig(Path.of(a.get("bp")), cfg);
+        }
+        if (a.containsKey("exception")) {
+            dbg.setExceptionPolicy(ExceptionPolicy.valueOf(a.get("exception")));
+        }
+        if (a.containsKey("exceptionAnalytics")) {
+            // count every exception instead of stopping on it; replaces the catch-all policy
+            ExceptionPolicy p = ExceptionPolicy.valueOf(a.get("exceptionAnalytics"));
+            dbg.setExceptionPolicy(ExceptionPolicy.none);
+            if (p != ExceptionPolicy.none) {
+                dbg.addExceptionRule(new ExceptionRule(null, p != ExceptionPolicy.uncaught, p != ExceptionPolicy.caught, null,
+                        List.of(), listFrom(a.get("exceptionExclude")), true));
+            }
+        }
+        if (a.containsKey("heapPackages") || a.containsKey("heapTop")) {
+            HeapHistogram.Options ho = new HeapHistogram.Options();
+            if (a.containsKey("heapPackages")) ho.packages = Arrays.asList(a.get("heapPackages").split(","));
+            if (a.containsKey("heapTop")) ho.top = Integer.parseInt(a.get("heapTop"));
+            dbg.setHeapOptions(ho);
+        }
+        if (a.containsKey("heapWatch")) dbg.watchHeap(Long.parseLong(a.get("heapWatch")));
+        if (a.containsKey("dumpWorkers") || a.containsKey("dumpGroups")) {
+            ThreadDump.Options dop = new ThreadDump.Options();
+            if (a.containsKey("dumpWorkers")) dop.workers = Integer.parseInt(a.get("dumpWorkers"));
+            if (a.containsKey("dumpGroups")) dop.groups = Integer.parseInt(a.get("dumpGroups"));
+            dbg.setDumpOptions(dop);
+        }
+        if (a.containsKey("dumpEvery")) dbg.dumpEvery(Long.parseLong(a.get("dumpEvery")));
+        if (a.containsKey("statsMs")) dbg.logStats(Long.parseLong(a.get("statsMs")));
+        if (a.containsKey("coverage")) {
+            LineCoverage.Options co = new LineCoverage.Options();
+            co.includes = Arrays.asList(a.get("coverage").split(","));
+            if (a.containsKey("coverageOut")) co.out = Path.of(a.get("coverageOut"));
+            if (a.containsKey("coverageEvery")) co.exportMillis = Long.parseLong(a.get("coverageEvery")) * 1_000;
+            if (a.containsKey("coverageBatch")) co.batch = Integer.parseInt(a.get("coverageBatch"));
+            dbg.startCoverage(co);
+        }
+        if (a.containsKey("traceMethods")) {
+            dbg.traceMethods(Arrays.asList(a.get("traceMethods").split(",")),
+                    a.containsKey("traceExclude") ? Arrays.asList(a.get("traceExclude").split(",")) : MethodTracer.DEFAULT_EXCLUDES,
+                    Long.parseLong(a.getOrDefault("traceDumpMs", "10000")));
+        }
+    }
+
+    /** {@code query <dir>}: replays matching events of a recording, or counts them per location. */
+    private static void query(Path dir, Map<String, String> a) throws IOException {
+        SessionRecording rec = SessionRecording.open(dir);
+        SessionRecording.Query q = new SessionRecording.Query();
+        q.location = a.get("location");
+        q.thread = a.get("thread");
+        q.event = a.get("event");
+        if (a.containsKey("from")) q.fromMicros = (long) (Double.parseDouble(a.get("from")) * 1_000_000);
+        if (a.containsKey("to")) q.toMicros = (long) (Double.parseDouble(a.get("to")) * 1_000_000);
+        long limit = Long.parseLong(a.getOrDefault("limit", String.valueOf(Long.MAX_VALUE)));
+        long t0 = System.nanoTime();
+        System.out.println("# session started " + rec.start() + ", " + rec.segmentCount() + " segment(s)");
+        if (a.containsKey("counts")) {
+            Map<String, Long> counts = rec.hitCounts(q);
+            counts.entrySet().stream().limit(limit)
+                    .forEach(e -> System.out.printf("%10d  %s%n", e.getValue(), e.getKey()));
+        } else {
+            long[] shown = {0};
+            rec.query(q, e -> {
+                if (shown[0]++ >= limit) return;
+                StringBuilder b = new StringBuilder(String.format("+%.6f %s", e.micros() / 1e6, e.event()));
+                if (e.thread() != null) b.append(" [").append(e.thread()).append(']');
+                if (e.location() != null) b.append(' ').append(e.location());
+                e.fields().forEach((k, v) -> b.append(' ').append(k).append('=').append(v));
+                System.out.println(b);
+            });
+            System.out.println("# " + shown[0] + " event(s)" + (shown[0] > limit ? ", first " + limit + " shown" : ""));
+        }
+        System.out.println("# " + rec.lastQueryStats() + " in " + (System.nanoTime() - t0) / 1_000_000 + "ms");
+    }
+
     private static List<String> listFrom(String csv) {
         if (csv == null || csv.isBlank()) return List.of();
         // Split on one or more whitespace characters.  Double backslash to escape in Java string literal.
@@ -72,12 +215,61 @@ public final class DebugCLI {
             String k = args[i];
             switch (k) {
                 case "--launch" -> m.put("launch", args[++i]);
-                case "--attach" -> m.put("attach", args[++i]);
+                case "--attach" -> m.put("attach", args[++i]); // host:port, a list, or @file
+                case "--connect-timeout-ms" -> m.put("connectTimeoutMs", args[++i]);
                 case "--cp" -> m.put("cp", args[++i]);
                 case "--bp" -> m.put("bp", args[++i]);
+                case "--no-bp-watch" -> m.put("bpNoWatch", "true");
                 case "--exception" -> m.put("exception", args[++i]); // none|caught|uncaught|all
+                case "--exception-analytics" -> m.put("exceptionAnalytics", args[++i]); // caught|uncaught|all
+                case "--exception-exclude" -> m.put("exceptionExclude", args[++i]); // "java.* sun.*"
+                case "--exception-summary-ms" -> m.put("exceptionSummaryMs", args[++i]);
+                case "--exception-rate" -> m.put("exceptionRate", args[++i]); // records per key per second
+                case "--suspend" -> m.put("suspend", args[++i]); // all|thread|none
                 case "--script" -> m.put("script", args[++i]);
                 case "--log" -> m.put("log", args[++i]);
+                case "--log-flush-ms" -> m.put("logFlushMs", args[++i]);
+                case "--log-flush-events" -> m.put("logFlushEvents", args[++i]);
+                case "--log-buffer" -> m.put("logBuffer", args[++i]);
+                case "--log-backpressure" -> m.put("logBackpressure", args[++i]); // drop|block
+                case "--log-fsync" -> m.put("logFsync", "true");
+                case "--snapshot-depth" -> m.put("snapshotDepth", args[++i]);
+                case "--snapshot-nodes" -> m.put("snapshotNodes", args[++i]);
+                case "--snapshot-bytes" -> m.put("snapshotBytes", args[++i]);
+                case "--snapshot-elements" -> m.put("snapshotElements", args[++i]);
+                case "--profile" -> m.put("profile", "true");
+                case "--profile-hz" -> m.put("profileHz", args[++i]);
+                case "--profile-duration" -> m.put("profileDuration", args[++i]); // seconds
+                case "--profile-out" -> m.put("profileOut", args[++i]);
+                case "--profile-top" -> m.put("profileTop", args[++i]);
+                case "--profile-max-nodes" -> m.put("profileMaxNodes", args[++i]);
+                case "--profile-all-threads" -> m.put("profileAllThreads", "true");
+                case "--trace-methods" -> m.put("traceMethods", args[++i]); // com.acme.*,*Service
+                case "--trace-exclude" -> m.put("traceExclude", args[++i]);
+                case "--trace-dump-ms" -> m.put("traceDumpMs", args[++i]);
+                case "--heap-watch" -> m.put("heapWatch", args[++i]); // seconds
+                case "--heap-packages" -> m.put("heapPackages", args[++i]); // com.acme.*,java.util.*
+                case "--heap-top" -> m.put("heapTop", args[++i]);
+                case "--watch-history" -> m.put("watchHistory", args[++i]);
+                case "--step-exclude" -> m.put("stepExclude", args[++i]); // java.*,jdk.*,sun.*,com.acme.gen.*
+                case "--step-limit" -> m.put("stepLimit", args[++i]);
+                case "--stats-ms" -> m.put("statsMs", args[++i]);
+                case "--dump-every" -> m.put("dumpEvery", args[++i]); // seconds
+                case "--dump-workers" -> m.put("dumpWorkers", args[++i]);
+                case "--dump-groups" -> m.put("dumpGroups", args[++i]);
+                case "--coverage" -> m.put("coverage", args[++i]); // com.acme.*,org.x.*
+                case "--coverage-out" -> m.put("coverageOut", args[++i]);
+                case "--coverage-every" -> m.put("coverageEvery", args[++i]); // seconds
+                case "--coverage-batch" -> m.put("coverageBatch", args[++i]);
+                case "--record" -> m.put("record", args[++i]);
+                case "--record-segment-mb" -> m.put("recordSegmentMb", args[++i]);
+                case "--location" -> m.put("location", args[++i]);
+                case "--thread" -> m.put("thread", args[++i]);
+                case "--event" -> m.put("event", args[++i]);
+                case "--from" -> m.put("from", args[++i]); // seconds since session start
+                case "--to" -> m.put("to", args[++i]);
+                case "--counts" -> m.put("counts", "true");
+                case "--limit" -> m.put("limit", args[++i]);
                 case "--appArgs" -> m.put("appArgs", args[++i]);
                 case "--vmOpts" -> m.put("vmOpts", args[++i]);
                 case "--trace" -> m.put("trace", args[++i]);
@@ -91,10 +283,27 @@ public final class DebugCLI {
     private static void printUsage() {
         System.out.println("""
         Usage:
-          java -jar java-debugging-system-all.jar [--launch <MainClass> | --attach host:port]
-               [--cp <classpath>] [--bp config.json] [--exception none|caught|uncaught|all]
+          java -jar java-debugging-system-all.jar query <dir> [--location <substring>] [--thread <name>]
+               [--event BreakpointEvent] [--from <sec>] [--to <sec>] [--counts] [--limit N]
+          java -jar java-debugging-system-all.jar [--launch <MainClass> | --attach host:port[,host:port...] | --attach @targets.txt]
+               [--cp <classpath>] [--bp config.json [--no-bp-watch]] [--exception none|caught|uncaught|all]
+               [--exception-analytics caught|uncaught|all [--exception-exclude "java.* sun.*"]
+                                    [--exception-summary-ms 10000] [--exception-rate 5]]
+               [--suspend all|thread|none]   (default: thread with --attach, all with --launch)
+               [--connect-timeout-ms 10000]   (several --attach targets: no REPL, stops are logged and resumed)
                [--script commands.txt] [--log out.jsonl] [--trace on|off]
                [--appArgs "<args...>"] [--vmOpts "<-Xmx512m ...>"]
+               [--log-flush-ms 200] [--log-flush-events 512] [--log-buffer 8192]
+               [--log-backpressure drop|block] [--log-fsync]
+               [--profile [--profile-hz 50] [--profile-duration <sec>] [--profile-out profile.collapsed]
+                          [--profile-top 20] [--profile-max-nodes 200000] [--profile-all-threads]]
+               [--trace-methods <pattern,...> [--trace-exclude java.*,javax.*,jdk.*,sun.*,com.sun.*] [--trace-dump-ms 10000]]
+               [--record <dir> [--record-segment-mb 16]] [--watch-history 64]
+               [--step-exclude java.*,javax.*,jdk.*,sun.*,com.sun.*] [--step-limit 100000]
+               [--coverage <pattern,...> [--coverage-out coverage.info] [--coverage-every 10] [--coverage-batch 500]]
+               [--heap-watch <sec>] [--heap-packages com.acme.*,...] [--heap-top 20] [--stats-ms 10000]
+               [--dump-every <sec>] [--dump-workers 8] [--dump-groups 20]
+               [--snapshot-depth 3] [--snapshot-nodes 500] [--snapshot-bytes 65536] [--snapshot-elements 20]
 
         Examples:
           # Launch sample and break on config breakpoints
@@ -103,6 +312,25 @@ public final class DebugCLI {
           # Attach to a remote JVM
           --attach localhost:5005 --exception uncaught
 
+          # Same breakpoints on every instance of a service, one merged log tagged by target
+          --attach @targets.txt --bp config/breakpoints.json --log fleet.jsonl
+
+          # Count and deduplicate every exception of a live service instead of stopping on it
+          --attach localhost:5005 --exception-analytics all --exception-exclude "java.* sun.*"
+
+          # Sample a running service for 30s and write a flame graph input
+          --attach localhost:5005 --profile --profile-duration 30 --profile-out svc.collapsed
+
+          # Thread dump with deadlock and lock-contention analysis every minute
+          --attach localhost:5005 --dump-every 60 --log dumps.jsonl
+
+          # Which lines of a live service run, as an lcov tracefile refreshed every 30s
+          --attach localhost:5005 --coverage com.acme.* --coverage-out svc.info --coverage-every 30
+
+          # Record a session, then count breakpoint hits per location in its first minute
+          --launch com.example.sample.ExampleApp --bp config/breakpoints.json --record rec1
+          query rec1 --event BreakpointEvent --to 60 --counts
+
           # Scripted run
           --launch com.example.sample.ExampleApp --script commands.txt --log events.jsonl
         """);
@@ -0,0 +1,267 @@
+package com.example.debugger;
+
+import com.sun.jdi.ThreadReference;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * An embeddable, asynchronous handle on one debuggee, for automation that would otherwise script the
+ * REPL. Each session owns a {@link Debugger} and one event-loop thread; stops are published on
+ * {@link #events()} and operations return {@link CompletableFuture}s, so one driver thread can run
+ * many sessions side by side.
+ * <p>
+ * Operations that need a parked thread ({@link #captureLocals}, {@link #evaluate}, {@link #resume},
+ * {@link #step}) are queued and run on the event-loop thread at the current stop, or at the next one
+ * if the target is running. They run in submission order; a resume or step ends the stop, so
+ * anything queued after it waits for the following stop. Breakpoint changes do not need a stop and
+ * run on the session's worker immediately. Futures of queued operations complete on the event-loop
+ * thread, so a dependent stage must not block on the same session; use the async variants for that.
+ * <p>
+ * Events are offered, never submitted: the loop publishes while the target is parked, so a
+ * subscriber whose buffer is full misses the event (counted in {@link #droppedEvents}) rather than
+ * freezing the loop and every queued operation with it.
+ * <p>
+ * The command-line REPL is not built on this class: it is a {@link Debugger.StopHandler} on the same
+ * event loop ({@link Debugger#startEventLoop(java.io.BufferedReader)}), so it shares the loop and the
+ * stop hand-off but not these futures.
+ */
+public final class DebugSession implements AutoCloseable {
+    /** A stop ({@code vmstart}, {@code breakpoint}, {@code method}, {@code step}, ...) or {@code exit}. */
+    public record DebugEvent(String kind, String thread, String location, Instant at) {
+        @Override public String toString() {
+            return at + " " + kind + (location != null ? " " + location : "") + (thread != null ? " thread=" + thread : "");
+        }
+    }
+
+    private record Op(Supplier<?> action, CompletableFuture<Object> result, boolean resumes) {}
+
+    private static final AtomicInteger SESSIONS = new AtomicInteger();
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+
+    private final Debugger dbg;
+    private final int id = SESSIONS.incrementAndGet();
+    private final SubmissionPublisher<DebugEvent> events;
+    private final ExecutorService worker;
+    private final BlockingQueue<Op> ops = new LinkedBlockingQueue<>();
+    private final CompletableFuture<Void> exited = new CompletableFuture<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ConcurrentLinkedQueue<CompletableFuture<DebugEvent>> stopWaiters = new ConcurrentLinkedQueue<>();
+    private volatile DebugEvent parkedAt; // the stop being served, null while the target runs
+    private volatile Thread loop;
+    private volatile boolean closed;
+
+    private DebugSession(EventLog log, boolean quiet) {
+        this.dbg = new Debugger(log);
+        if (quiet) dbg.setOutput(QUIET);
+        this.worker = Executors.newSingleThreadExecutor(r -> daemon(r, "debug-session-" + id + "-worker"));
+        this.events = new SubmissionPublisher<>(worker, Flow.defaultBufferSize());
+    }
+
+    /** Launches {@code mainClass} suspended at VM start; the first event is {@code vmstart}. */
+    public static DebugSession launch(String mainClass, String classpath, List<String> appArgs, List<String> vmOpts,
+                                      EventLog log, boolean quiet) throws Exception {
+        DebugSession s = new DebugSession(log, quiet);
+        s.dbg.launch(mainClass, classpath, appArgs, vmOpts);
+        return s.start();
+    }
+
+    /** Attaches to a running JVM; threads stop at breakpoints with {@code suspend thread}. */
+    public static DebugSession attach(String host, String port, EventLog log, boolean quiet) throws Exception {
+        DebugSession s = new DebugSession(log, quiet);
+        s.dbg.attach(host, port);
+        s.dbg.setDefaultSuspend(SuspendPolicy.thread);
+        return s.start();
+    }
+
+    private DebugSession start() {
+        Thread t = daemon(() -> {
+            try {
+                dbg.startEventLoop(this::stopped);
+            } catch (Exception e) {
+                exited.completeExceptionally(e);
+            } finally {
+                finish();
+            }
+        }, "debug-session-" + id);
+        loop = t;
+        t.start();
+        return this;
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        // platform threads: the build targets Java 17, which has no virtual threads
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    /** The underlying debugger, for settings that must be made before the first resume. */
+    public Debugger debugger() {
+        return dbg;
+    }
+
+    /** Stops and the final {@code exit}, delivered on the session's worker thread. */
+    public Flow.Publisher<DebugEvent> events() {
+        return events;
+    }
+
+    /** Events a subscriber missed because its buffer was full, summed over subscribers. */
+    public long droppedEvents() {
+        return dropped.get();
+    }
+
+    /**
+     * Completes with the stop the target is parked at, or else the next one. A resume or step future
+     * completes only after the stop is left, so {@code resume().thenCompose(v -> stop())} waits for a
+     * new one.
+     */
+    public CompletableFuture<DebugEvent> stop() {
+        DebugEvent now = parkedAt;
+        if (now != null) return CompletableFuture.completedFuture(now);
+        CompletableFuture<DebugEvent> f = new CompletableFuture<>();
+        stopWaiters.add(f);
+        now = parkedAt; // the loop may have parked between the read and the add
+        if (now != null) f.complete(now);
+        if (closed) f.completeExceptionally(new IllegalStateException("Session closed"));
+        return f;
+    }
+
+    /** Completes when the target VM has exited or the session is closed. */
+    public CompletableFuture<Void> exited() {
+        return exited;
+    }
+
+    // -------------------- Operations --------------------
+
+    public CompletableFuture<BreakpointSpec> setBreakpoint(String spec) {
+        return CompletableFuture.supplyAsync(() -> {
+            BreakpointSpec s = BreakpointSpec.parse(spec);
+            dbg.addBreakpoint(s);
+            return s;
+        }, worker);
+    }
+
+    public CompletableFuture<Integer> removeBreakpoints(String location) {
+        return CompletableFuture.supplyAsync(() -> dbg.removeBreakpoints(location), worker);
+    }
+
+    public CompletableFuture<Void> resume() {
+        return atStop(() -> {
+            dbg.resume();
+            return null;
+        }, true);
+    }
+
+    public CompletableFuture<Void> step(String which) {
+        return atStop(() -> {
+            if (dbg.currentThread() == null) throw new IllegalStateException("Cannot step: no suspended thread");
+            dbg.step(which);
+            return null;
+        }, true);
+    }
+
+    /** Name to rendered value for the top frame of the stopped thread. */
+    public CompletableFuture<Map<String, String>> captureLocals() {
+        return atStop(dbg::captureLocals, false);
+    }
+
+    /** Evaluates an {@link Expression} in the top frame of the stopped thread. */
+    public CompletableFuture<String> evaluate(String expression) {
+        return atStop(() -> dbg.evaluate(expression), false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> atStop(Supplier<T> action, boolean resumes) {
+        CompletableFuture<Object> f = new CompletableFuture<>();
+        ops.add(new Op(action, f, resumes));
+        // finish() may have drained the queue between the add and here; a no-op if it failed it already
+        if (closed) f.completeExceptionally(new IllegalStateException("Session closed"));
+        return (CompletableFuture<T>) (CompletableFuture<?>) f;
+    }
+
+    // -------------------- Event loop --------------------
+
+    /** Runs on the event-loop thread while the target is parked: publish, then serve queued operations. */
+    private void stopped(String reason, ThreadReference thread, String location) throws InterruptedException {
+        DebugEvent e = new DebugEvent(reason, thread != null ? thread.name() : null, location, Instant.now());
+        publish(e);
+        parkedAt = e;
+        for (CompletableFuture<DebugEvent> w; (w = stopWaiters.poll()) != null; ) w.complete(e);
+        try {
+            serve();
+        } finally {
+            parkedAt = null;
+        }
+    }
+
+    /** Never blocks the event loop on a slow subscriber: a full buffer drops the event for that subscriber. */
+    private void publish(DebugEvent e) {
+        events.offer(e, (subscriber, missed) -> {
+            dropped.incrementAndGet();
+            return false; // no retry
+        });
+    }
+
+    private void serve() throws InterruptedException {
+        while (!closed) {
+            Op op = ops.poll(100, TimeUnit.MILLISECONDS);
+            if (op == null) {
+                if (!dbg.isConnected()) return; // the connection dropped while parked
+                continue;
+            }
+            if (op.action == null) return; // close()
+            RoundTrips.reset();
+            Object result;
+            try {
+                result = op.action.get();
+            } catch (RuntimeException ex) {
+                op.result.completeExceptionally(ex);
+                continue; // a failed step did not resume
+            }
+            if (op.resumes) {
+                parkedAt = null;
+                op.result.complete(result);
+                return;
+            }
+            op.result.complete(result);
+        }
+    }
+
+    private void finish() {
+        closed = true;
+        parkedAt = null;
+        IllegalStateException gone = new IllegalStateException("Session closed");
+        for (Op op; (op = ops.poll()) != null; ) {
+            if (op.result != null) op.result.completeExceptionally(gone);
+        }
+        for (CompletableFuture<DebugEvent> w; (w = stopWaiters.poll()) != null; ) w.completeExceptionally(gone);
+        publish(new DebugEvent("exit", null, null, Instant.now()));
+        events.close();
+        exited.complete(null);
+        worker.shutdown();
+    }
+
+    /** Disconnects (a launched target is killed) and fails any queued operation. */
+    @Override public void close() {
+        if (closed) return;
+        closed = true;
+        ops.add(new Op(null, null, true)); // wakes a parked event loop
+        dbg.dispose();
+        Thread t = loop;
+        if (t != null && t != Thread.currentThread()) {
+            try {
+                t.join(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -7,9 +7,15 @@ import com.sun.jdi.event.*;
 import com.sun.jdi.request.*;
 
 import java.io.*;
-import java.time.Instant;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public final class Debugger {
     private VirtualMachine vm;
@@ -18,17 +24,60 @@ public final class Debugger {
     private boolean tracing = false;
 
     private EventSet currentEventSet = null;
+    private Stop currentStop = null;
+    private boolean currentSetResumed = false; // resuming twice would release threads parked by later events
     private ThreadReference currentThread = null;
 
+    private static final String SPEC = "spec"; // EventRequest property holding the BreakpointSpec
+    private static final String LOG = "log";   // EventRequest property holding the compiled LogTemplate
+    private static final String FILTER = "filter"; // EventRequest property holding the HitFilter
+    private static final String RULE = "rule";     // Exception/ClassPrepare request property holding an ExceptionRule
+    private static final String RUN = "run";       // Step/Breakpoint request property holding the StepRun it serves
+
     private final Map<String, List<BreakpointRequest>> lineBreakpoints = new ConcurrentHashMap<>();
-    private final List<MethodEntryRequest> methodEntries = new ArrayList<>();
-    private final List<BreakpointSpec> pendingBreakpoints = new ArrayList<>();
+    private final Map<String, List<BreakpointRequest>> methodBreakpoints = new ConcurrentHashMap<>();
+    private final Map<String, List<WatchpointRequest>> watchpoints = new ConcurrentHashMap<>();
+    private FieldHistory fieldHistory = new FieldHistory(64);
+    private BreakpointRegistry registry; // created with the VM connection
     private ExceptionPolicy exceptionPolicy = ExceptionPolicy.uncaught;
+    private final List<ExceptionRule> exceptionRules = new ArrayList<>();
+    private SuspendPolicy defaultSuspend = SuspendPolicy.all;
+    private List<String> stepExcludes = MethodTracer.DEFAULT_EXCLUDES;
+    private long stepLimit = 100_000; // lines per step-until
+    private StepRun run; // the step / until in progress, event-loop thread only
+    private ObjectSnapshot.Budget snapshotBudget = new ObjectSnapshot.Budget();
+    private volatile Expression.Batch displays; // 'display', shown at every stop; null if none
+
+    /** A suspending event set handed from the pump to the REPL thread, which resumes it. */
+    private record Stop(EventSet set, List<Event> events, long received) {}
+    private static final Stop END = new Stop(null, List.of(), 0);
+    private final BlockingQueue<Stop> stops = new LinkedBlockingQueue<>();
+    private final DispatchStats dispatch = new DispatchStats();
+
+    private MethodTracer tracer; // --trace-methods, may be null
+    private Thread tracerDumper;
+    private HeapHistogram.Options heapOptions = new HeapHistogram.Options();
+    private HeapHistogram heap; // created by the first 'heap' / --heap-watch snapshot
+    private Thread heapWatcher;
+    private ExceptionStats.Options analyticsOptions = new ExceptionStats.Options();
+    private ExceptionStats exceptionStats; // created by the first analytics rule
+    private Thread exceptionSummarizer;
+    private LineCoverage coverage; // --coverage, may be null
+    private ThreadDump.Options dumpOptions = new ThreadDump.Options();
+    private ThreadDump threadDump; // created by the first 'dump' / --dump-every
+    private Thread dumpWatcher;
+    private ConfigWatcher configWatcher; // --bp, may be null
 
-    private final PrintWriter logWriter; // may be null
+    private final EventLog eventLog; // may be null
+    private PrintStream out = System.out; // event output; the REPL always answers on System.out
+    private SessionRecorder recorder; // --record, may be null
+    private final MetadataCache meta = new MetadataCache();
+    private final DebuggerMetrics metrics;
+    private Thread statsLogger;
 
-    public Debugger(PrintWriter logWriter) {
-        this.logWriter = logWriter;
+    public Debugger(EventLog eventLog) {
+        this.eventLog = eventLog;
+        this.metrics = new DebuggerMetrics(eventLog);
     }
 
     // -------------------- Attach/Launch --------------------
@@ -55,39 +104,338 @@ public final class Debugger {
 
         this.vm = connector.launch(args);
         this.erm = vm.eventRequestManager();
+        this.registry = new BreakpointRegistry(erm);
+        metrics.register("launch:" + mainClass);
         log("VMStartRequested", Map.of("main", mainClass));
     }
 
     public void attach(String host, String port) throws IOException, IllegalConnectorArgumentsException {
+        attach(host, port, 0);
+    }
+
+    /** Gives up after {@code timeoutMillis} (0 = the connector's default, which may wait indefinitely). */
+    public void attach(String host, String port, long timeoutMillis) throws IOException, IllegalConnectorArgumentsException {
         AttachingConnector socketAttach = findSocketAttachConnector();
         Map<String, Connector.Argument> args = socketAttach.defaultArguments();
         args.get("hostname").setValue(host);
         args.get("port").setValue(port);
+        if (timeoutMillis > 0 && args.containsKey("timeout")) args.get("timeout").setValue(Long.toString(timeoutMillis));
         this.vm = socketAttach.attach(args);
         this.erm = vm.eventRequestManager();
+        this.registry = new BreakpointRegistry(erm);
+        metrics.register(host + ":" + port);
         log("VMAttached", Map.of("host", host, "port", port));
     }
 
     // -------------------- Config --------------------
 
-    public void setExceptionPolicy(ExceptionPolicy policy) {
+    /** Suspend policy for breakpoints, exception rules and steps that don't set their own. */
+    public void setDefaultSuspend(SuspendPolicy policy) {
+        this.defaultSuspend = policy;
+    }
+
+    /** Class patterns steps never stop in ({@code java.*} etc. by default); empty steps everywhere. */
+    public void setStepExcludes(List<String> patterns) {
+        this.stepExcludes = List.copyOf(patterns);
+    }
+
+    /** Lines a {@code step-until} takes at most before it stops anyway. */
+    public void setStepLimit(long lines) {
+        this.stepLimit = lines;
+    }
+
+    /** Where event lines ({@code [Breakpoint] ...}) go; REPL answers always go to System.out. */
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    public DebuggerMetrics metrics() {
+        return metrics;
+    }
+
+    /** {@code --stats-ms}: a {@code Stats} record in the event log every {@code millis}. */
+    public void logStats(long millis) {
+        if (eventLog == null) {
+            println("[stats] no event log: add --log");
+            return;
+        }
+        statsLogger = new Thread(() -> {
+            try {
+                while (!quit) {
+                    Thread.sleep(millis);
+                    metrics.logTo(eventLog);
+                }
+            } catch (InterruptedException ignored) {
+                // disposed
+            }
+        }, "stats-log");
+        statsLogger.setDaemon(true);
+        statsLogger.start();
+    }
+
+    /** Every logged event is also appended to the binary recording; closed by {@link #dispose}. */
+    public void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /** Events kept per watched field for {@code history}. */
+    public void setWatchHistory(int capacity) {
+        this.fieldHistory = new FieldHistory(capacity);
+    }
+
+    public void setSnapshotBudget(ObjectSnapshot.Budget budget) {
+        this.snapshotBudget = budget;
+    }
+
+    public void setExceptionAnalytics(ExceptionStats.Options opts) {
+        this.analyticsOptions = opts;
+    }
+
+    public synchronized void setExceptionPolicy(ExceptionPolicy policy) {
         this.exceptionPolicy = policy;
-        // clear existing and install new
+        // clear the previous catch-all request (rule-based requests stay) and install new
         for (ExceptionRequest r : new ArrayList<>(erm.exceptionRequests())) {
-            erm.deleteEventRequest(r);
+            if (r.getProperty(RULE) == null) erm.deleteEventRequest(r);
         }
         boolean caught = (policy == ExceptionPolicy.caught || policy == ExceptionPolicy.all);
         boolean uncaught = (policy == ExceptionPolicy.uncaught || policy == ExceptionPolicy.all);
         if (caught || uncaught) {
             ExceptionRequest er = erm.createExceptionRequest(null, caught, uncaught);
-            er.setSuspendPolicy(EventRequest.SUSPEND_ALL);
+            er.setSuspendPolicy(defaultSuspend.jdi);
             er.enable();
         }
     }
 
-    public void addBreakpoint(BreakpointSpec spec) {
-        pendingBreakpoints.add(spec);
-        installBreakpointIfLoaded(spec);
+    /**
+     * Installs now if the exception type is loaded, otherwise when it is prepared. Returns the
+     * number of exception requests created now.
+     */
+    public synchronized int addExceptionRule(ExceptionRule rule) {
+        exceptionRules.add(rule);
+        if (rule.type == null) return installExceptionRule(rule, null);
+        List<ReferenceType> types = meta.classesByName(vm, rule.type);
+        int created = 0;
+        for (ReferenceType ref : types) created += installExceptionRule(rule, ref);
+        if (types.isEmpty()) {
+            ClassPrepareRequest cr = erm.createClassPrepareRequest();
+            cr.addClassFilter(rule.type);
+            cr.putProperty(RULE, rule);
+            cr.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+            cr.enable();
+        }
+        return created;
+    }
+
+    /** Removes one rule equal to {@code rule}; returns the number of exception requests deleted. */
+    public synchronized int removeExceptionRule(ExceptionRule rule) {
+        int i = exceptionRules.indexOf(rule);
+        if (i < 0) return 0;
+        ExceptionRule registered = exceptionRules.remove(i);
+        int deleted = 0;
+        for (ExceptionRequest er : new ArrayList<>(erm.exceptionRequests())) {
+            if (er.getProperty(RULE) == registered) {
+                erm.deleteEventRequest(er);
+                deleted++;
+            }
+        }
+        for (ClassPrepareRequest cr : new ArrayList<>(erm.classPrepareRequests())) {
+            if (cr.getProperty(RULE) == registered) erm.deleteEventRequest(cr); // type not loaded yet
+        }
+        println("[exception rule removed] " + registered);
+        return deleted;
+    }
+
+    /** One request per include pattern: JDI ANDs class filters on one request. */
+    private synchronized int installExceptionRule(ExceptionRule rule, ReferenceType type) {
+        List<String> includes = rule.include.isEmpty() ? Collections.singletonList(null) : rule.include;
+        for (String include : includes) {
+            ExceptionRequest er = erm.createExceptionRequest(type, rule.caught, rule.uncaught);
+            er.putProperty(RULE, rule);
+            if (include != null) er.addClassFilter(include);
+            for (String ex : rule.exclude) er.addClassExclusionFilter(ex);
+            if (rule.analytics) {
+                // the throwing thread only has to hold still for the first sample stack of each key;
+                // ExceptionStats turns suspension off once no new keys turn up
+                er.putProperty(ExceptionStats.STATS, exceptionStats());
+                er.putProperty(ExceptionStats.SAMPLING, rule.suspend != SuspendPolicy.none);
+                er.setSuspendPolicy(rule.suspend == SuspendPolicy.none ? EventRequest.SUSPEND_NONE : EventRequest.SUSPEND_EVENT_THREAD);
+            } else {
+                er.setSuspendPolicy((rule.suspend != null ? rule.suspend : defaultSuspend).jdi);
+            }
+            er.enable();
+        }
+        println("[exception rule set] " + rule);
+        return includes.size();
+    }
+
+    private ExceptionStats exceptionStats() {
+        if (exceptionStats != null) return exceptionStats;
+        ExceptionStats stats = new ExceptionStats(analyticsOptions, meta, eventLog, out);
+        exceptionStats = stats;
+        long every = analyticsOptions.summaryMillis;
+        if (every > 0) {
+            exceptionSummarizer = new Thread(() -> {
+                try {
+                    while (!quit) {
+                        Thread.sleep(every);
+                        stats.summary(out, 10);
+                    }
+                } catch (InterruptedException ignored) {
+                    // disposed
+                }
+            }, "exception-summary");
+            exceptionSummarizer.setDaemon(true);
+            exceptionSummarizer.start();
+        }
+        return stats;
+    }
+
+    /** Returns the number of requests created now; classes loaded later get theirs when prepared. */
+    public synchronized int addBreakpoint(BreakpointSpec spec) {
+        registry.add(spec); // also for loaded classes: another class loader may define the class again
+        return installBreakpointIfLoaded(spec);
+    }
+
+    /** Removes every breakpoint at {@code location} ("Class:42", "Class#method", "Class.field", patterns included). */
+    public synchronized int removeBreakpoints(String location) {
+        Set<BreakpointSpec> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        removed.addAll(registry.remove(location));
+        return deleteRequests(removed);
+    }
+
+    /** Removes one breakpoint equal to {@code spec}, leaving others at the same location; returns requests deleted. */
+    public synchronized int removeBreakpoint(BreakpointSpec spec) {
+        BreakpointSpec registered = registry.remove(spec);
+        if (registered == null) return 0;
+        Set<BreakpointSpec> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        removed.add(registered);
+        return deleteRequests(removed);
+    }
+
+    private int deleteRequests(Set<BreakpointSpec> removed) {
+        int deleted = 0;
+        for (Map<String, List<BreakpointRequest>> byClass : List.of(lineBreakpoints, methodBreakpoints)) {
+            for (List<BreakpointRequest> l : byClass.values()) {
+                for (Iterator<BreakpointRequest> it = l.iterator(); it.hasNext(); ) {
+                    BreakpointRequest br = it.next();
+                    if (removed.contains(br.getProperty(SPEC))) {
+                        erm.deleteEventRequest(br);
+                        it.remove();
+                        deleted++;
+                    }
+                }
+            }
+            byClass.values().removeIf(List::isEmpty);
+        }
+        for (List<WatchpointRequest> l : watchpoints.values()) {
+            for (Iterator<WatchpointRequest> it = l.iterator(); it.hasNext(); ) {
+                WatchpointRequest wr = it.next();
+                if (removed.contains(wr.getProperty(SPEC))) {
+                    erm.deleteEventRequest(wr);
+                    it.remove();
+                    deleted++;
+                }
+            }
+        }
+        watchpoints.values().removeIf(List::isEmpty);
+        return deleted;
+    }
+
+    /**
+     * Starts the non-suspending method timing tracer; with an event log, cumulative per-method stats
+     * are dumped to it every {@code dumpMillis}.
+     */
+    public void traceMethods(List<String> includes, List<String> excludes, long dumpMillis) {
+        tracer = new MethodTracer(erm, includes, excludes);
+        println("[trace-methods] " + includes + " excluding " + excludes);
+        if (eventLog == null || dumpMillis <= 0) return;
+        tracerDumper = new Thread(() -> {
+            try {
+                while (!quit) {
+                    Thread.sleep(dumpMillis);
+                    tracer.dump(eventLog, 50);
+                }
+            } catch (InterruptedException ignored) {
+                // disposed
+            }
+        }, "method-trace-dump");
+        tracerDumper.setDaemon(true);
+        tracerDumper.start();
+    }
+
+    /** Reloads the {@code --bp} file when it changes, applying only the difference to {@code applied}. */
+    public void watchConfig(Path file, ConfigLoader.Config applied) {
+        ConfigWatcher w = new ConfigWatcher(this, file, applied, eventLog, out);
+        try {
+            w.start();
+        } catch (IOException e) {
+            println("[warn] cannot watch " + file + ": " + e.getMessage());
+            return;
+        }
+        configWatcher = w;
+        println("[config] watching " + file);
+    }
+
+    /** {@code --coverage}: one-shot breakpoints on every line of the matching classes. */
+    public void startCoverage(LineCoverage.Options opts) {
+        coverage = new LineCoverage(vm, opts, eventLog, out);
+        coverage.start();
+        println("[coverage] " + opts.includes + " -> " + opts.out + " every " + opts.exportMillis / 1_000 + "s");
+    }
+
+    public void setHeapOptions(HeapHistogram.Options opts) {
+        this.heapOptions = opts;
+    }
+
+    private synchronized HeapHistogram heap() {
+        if (heap == null) heap = new HeapHistogram(vm, heapOptions, eventLog);
+        return heap;
+    }
+
+    /** {@code --heap-watch}: prints the classes that grew most every {@code seconds}. */
+    public void watchHeap(long seconds) {
+        HeapHistogram h = heap();
+        heapWatcher = new Thread(() -> {
+            try {
+                while (!quit) {
+                    Thread.sleep(seconds * 1_000);
+                    out.println("[heap-watch] top growth");
+                    h.snapshot(List.of(), heapOptions.top, true, out);
+                }
+            } catch (InterruptedException | VMDisconnectedException ignored) {
+                // disposed or target gone
+            }
+        }, "heap-watch");
+        heapWatcher.setDaemon(true);
+        heapWatcher.start();
+        println("[heap-watch] every " + seconds + "s" + (heapOptions.packages.isEmpty() ? "" : " in " + heapOptions.packages));
+    }
+
+    public void setDumpOptions(ThreadDump.Options opts) {
+        this.dumpOptions = opts;
+    }
+
+    private synchronized ThreadDump threadDump() {
+        if (threadDump == null) threadDump = new ThreadDump(vm, dumpOptions, meta, eventLog);
+        return threadDump;
+    }
+
+    /** {@code --dump-every}: an all-thread dump with deadlock and contention analysis every {@code seconds}. */
+    public void dumpEvery(long seconds) {
+        ThreadDump d = threadDump();
+        dumpWatcher = new Thread(() -> {
+            try {
+                while (!quit) {
+                    Thread.sleep(seconds * 1_000);
+                    d.dump(out, dumpOptions.groups);
+                }
+            } catch (InterruptedException | VMDisconnectedException ignored) {
+                // disposed or target gone
+            }
+        }, "dump-watch");
+        dumpWatcher.setDaemon(true);
+        dumpWatcher.start();
+        println("[dump] every " + seconds + "s");
     }
 
     public void enableTracing(boolean on) {
@@ -96,57 +444,290 @@ public final class Debugger {
 
     // -------------------- Event Loop --------------------
 
+    /**
+     * Runs the REPL on the calling thread while a pump thread drains the JDI event queue. The pump
+     * handles everything that resumes on its own (class prepare/unload, logpoints, filtered hits,
+     * non-suspending events) immediately, and hands only real stops to the {@link #stops} queue, so
+     * a prompt waiting for input never delays breakpoint installation or VM death.
+     */
     public void startEventLoop(BufferedReader commandReader) throws Exception {
-        installClassPrepareForPending();
-        EventQueue q = vm.eventQueue();
+        startEventLoop((reason, thread, location) -> openRepl(commandReader, reason));
+    }
+
+    /**
+     * Receives each stop on the event-loop thread while the target is parked. {@code thread} and
+     * {@code location} are null for the VM start. The stop is resumed when the handler returns unless
+     * it already called {@link #resume} or {@link #step}.
+     */
+    public interface StopHandler {
+        void stopped(String reason, ThreadReference thread, String location) throws Exception;
+    }
+
+    /** As {@link #startEventLoop(BufferedReader)}, with stops going to {@code handler} instead of the REPL. */
+    public void startEventLoop(StopHandler handler) throws Exception {
+        ClassUnloadRequest unload = erm.createClassUnloadRequest(); // keeps the metadata cache honest
+        unload.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+        unload.enable();
+        Thread pump = new Thread(this::pumpEvents, "jdi-event-pump");
+        pump.setDaemon(true);
+        pump.start();
 
         while (!quit) {
-            EventSet set = q.remove(); // waits
-            currentEventSet = set;
-            for (Event ev : set) {
+            Stop stop = stops.take();
+            if (stop == END) break;
+            dispatch.taken(System.nanoTime() - stop.received);
+            currentEventSet = stop.set;
+            currentStop = stop;
+            currentSetResumed = false;
+            endRun(stop);
+            long opened = System.nanoTime();
+            for (Event ev : stop.events) {
+                if (quit) break;
                 if (ev instanceof VMStartEvent) {
                     println("[VMStart] Target VM started. Type 'help' to see commands.");
-                    openRepl(commandReader, "vmstart");
+                    handler.stopped("vmstart", null, null);
                 } else if (ev instanceof BreakpointEvent be) {
                     currentThread = be.thread();
                     String loc = locationString(be.location());
-                    println("[Breakpoint] " + loc);
-                    log("BreakpointEvent", Map.of("location", loc));
-                    openRepl(commandReader, "breakpoint");
+                    BreakpointSpec spec = (BreakpointSpec) be.request().getProperty(SPEC);
+                    if (spec != null && spec.kind == BreakpointSpec.Kind.METHOD) {
+                        println("[MethodEntry] " + loc);
+                        log("MethodEntryEvent", Map.of("location", loc, "thread", be.thread().name(), "breakpoint", spec.toString()));
+                        stopped(handler, "method", loc);
+                    } else {
+                        println("[Breakpoint] " + loc);
+                        log("BreakpointEvent", Map.of("location", loc, "thread", be.thread().name()));
+                        stopped(handler, "breakpoint", loc);
+                    }
+                } else if (ev instanceof WatchpointEvent we) {
+                    currentThread = we.thread(); // announced by the pump, which recorded the change
+                    stopped(handler, "watch", locationString(we.location()));
                 } else if (ev instanceof StepEvent se) {
                     currentThread = se.thread();
                     String loc = locationString(se.location());
                     println("[Step] " + loc);
-                    log("StepEvent", Map.of("location", loc));
-                    openRepl(commandReader, "step");
-                } else if (ev instanceof MethodEntryEvent me) {
-                    currentThread = me.thread();
-                    Location loc = me.location();
-                    String s = loc.declaringType().name() + "#" + loc.method().name() +
-                               "(" + safeSource(loc) + ":" + loc.lineNumber() + ")";
-                    println("[MethodEntry] " + s);
-                    log("MethodEntryEvent", Map.of("location", s));
-                    openRepl(commandReader, "method");
+                    log("StepEvent", Map.of("location", loc, "thread", se.thread().name()));
+                    stopped(handler, "step", loc);
                 } else if (ev instanceof ExceptionEvent ee) {
                     currentThread = ee.thread();
                     String s = locationString(ee.location());
                     println("[Exception] " + ee.exception().type().name() + " at " + s);
-                    log("ExceptionEvent", Map.of("exception", ee.exception().type().name(), "location", s));
-                    openRepl(commandReader, "exception");
-                } else if (ev instanceof ClassPrepareEvent cpe) {
-                    ReferenceType ref = cpe.referenceType();
-                    println("[ClassPrepare] " + ref.name());
-                    installPendingForClass(ref);
-                } else if (ev instanceof VMDeathEvent || ev instanceof VMDisconnectEvent) {
-                    println("[VMExit] Target VM exited.");
-                    quit = true;
+                    log("ExceptionEvent", Map.of("exception", ee.exception().type().name(), "location", s, "thread", ee.thread().name()));
+                    stopped(handler, "exception", s);
                 }
             }
+            metrics.replDwell(System.nanoTime() - opened);
             // If REPL resumed already, set is resumed there; else resume to keep VM running.
-            if (!quit && set.suspendPolicy() != EventRequest.SUSPEND_NONE) {
-                try { set.resume(); } catch (IllegalThreadStateException ignored) {}
+            if (!quit && !currentSetResumed) resume();
+        }
+    }
+
+    /** Event pump: classifies each event set, handles auto-resume kinds and queues the rest. */
+    private void pumpEvents() {
+        EventQueue q = vm.eventQueue();
+        try {
+            while (!quit) {
+                EventSet set = q.remove(); // waits
+                long received = System.nanoTime();
+                List<Event> stopping = new ArrayList<>(1);
+                HitFilter skipped = null;
+                boolean exited = false;
+                List<ReferenceType> forCoverage = List.of();
+                for (Event ev : set) {
+                    metrics.event(ev);
+                    Object traced = ev.request() != null ? ev.request().getProperty(MethodTracer.TRACER) : null;
+                    Object counted = ev.request() != null ? ev.request().getProperty(ExceptionStats.STATS) : null;
+                    Object covered = ev.request() != null ? ev.request().getProperty(LineCoverage.SITE) : null;
+                    if (traced != null) {
+                        ((MethodTracer) traced).handle(ev, received);
+                    } else if (counted != null) {
+                        ((ExceptionStats) counted).record((ExceptionEvent) ev, received); // resumed below
+                    } else if (covered != null) {
+                        coverage.hit((BreakpointEvent) ev);
+                    } else if (ev instanceof VMStartEvent) {
+                        stopping.add(ev);
+                    } else if (ev instanceof BreakpointEvent be) {
+                        HitFilter hf = (HitFilter) be.request().getProperty(FILTER);
+                        if (hf != null && !passes(hf, be)) {
+                            skipped = hf;
+                            continue; // auto-resumed below
+                        }
+                        BreakpointSpec spec = (BreakpointSpec) be.request().getProperty(SPEC);
+                        if (spec != null && spec.isLogpoint()) {
+                            emitLogpoint(be);
+                            continue; // resumed with the event set below, no REPL
+                        }
+                        if (be.request().suspendPolicy() == EventRequest.SUSPEND_NONE) {
+                            // nothing is parked, so there is nothing to inspect: record the hit and move on
+                            String loc = locationString(be.location());
+                            println("[Hit] " + loc + " thread=" + be.thread().name());
+                            log("BreakpointHit", Map.of("location", loc, "thread", be.thread().name()));
+                            continue;
+                        }
+                        stopping.add(be);
+                    } else if (ev instanceof WatchpointEvent we) {
+                        HitFilter hf = (HitFilter) we.request().getProperty(FILTER);
+                        if (hf != null && !passes(hf, we)) {
+                            skipped = hf;
+                            continue;
+                        }
+                        boolean parked = we.request().suspendPolicy() != EventRequest.SUSPEND_NONE;
+                        FieldHistory.Change c = fieldHistory.record(we, parked, meta);
+                        String field = we.field().declaringType().name() + "." + we.field().name();
+                        println("[Watch] " + field + " " + c.object()
+                                + (c.read() ? " read " + c.newValue() : " " + c.oldValue() + " -> " + c.newValue())
+                                + " at " + c.location() + " thread=" + c.thread());
+                        log(c.read() ? "FieldRead" : "FieldWrite", Map.of("field", field, "object", c.object(),
+                                "old", c.oldValue(), "new", c.newValue(), "location", c.location(), "thread", c.thread()));
+                        if (parked) stopping.add(we);
+                    } else if (ev instanceof StepEvent se) {
+                        StepRun r = (StepRun) se.request().getProperty(RUN);
+                        if (r != null && r.until != null && !arrived(r, se)) continue; // next line, auto-resumed below
+                        stopping.add(ev);
+                    } else if (ev instanceof ExceptionEvent ee) {
+                        if (ee.request().suspendPolicy() != EventRequest.SUSPEND_NONE) {
+                            stopping.add(ee);
+                            continue;
+                        }
+                        String s = locationString(ee.location());
+                        println("[Exception] " + ee.exception().type().name() + " at " + s);
+                        log("ExceptionEvent", Map.of("exception", ee.exception().type().name(), "location", s, "thread", ee.thread().name()));
+                    } else if (ev instanceof ClassPrepareEvent cpe) {
+                        ReferenceType ref = cpe.referenceType();
+                        meta.classPrepared(ref);
+                        if (cpe.request().getProperty(LineCoverage.PREPARE) != null) {
+                            if (forCoverage.isEmpty()) forCoverage = new ArrayList<>(1);
+                            forCoverage.add(ref);
+                            continue;
+                        }
+                        println("[ClassPrepare] " + ref.name());
+                        ExceptionRule rule = (ExceptionRule) cpe.request().getProperty(RULE);
+                        if (rule != null) installExceptionRule(rule, ref);
+                        else installPendingForClass(ref);
+                    } else if (ev instanceof ClassUnloadEvent cue) {
+                        meta.invalidate(cue.className());
+                    } else if (ev instanceof VMDeathEvent || ev instanceof VMDisconnectEvent) {
+                        println("[VMExit] Target VM exited.");
+                        exited = true;
+                    }
+                }
+                boolean handedOff = !forCoverage.isEmpty() && stopping.isEmpty() && !exited;
+                if (!forCoverage.isEmpty()) coverage.classesPrepared(forCoverage, handedOff ? set : null);
+                if (!stopping.isEmpty()) {
+                    stops.add(new Stop(set, stopping, received)); // the REPL thread resumes it
+                } else if (handedOff) {
+                    // the coverage worker resumes the preparing thread once the class is installed
+                } else if (!exited && set.suspendPolicy() != EventRequest.SUSPEND_NONE) {
+                    try { set.resume(); } catch (IllegalThreadStateException ignored) {}
+                    suspended(set, System.nanoTime() - received);
+                }
+                metrics.sampleBacklog();
+                long took = System.nanoTime() - received;
+                dispatch.pumped(set.size(), stopping.isEmpty() ? took : -1, stops.size());
+                if (skipped != null && set.size() == 1) {
+                    // only a set holding just the filtered hit times it alone
+                    skipped.filteredNanos += took; // condition + resume round-trip
+                    skipped.timed++;
+                }
+                if (exited) break;
+            }
+        } catch (InterruptedException | VMDisconnectedException e) {
+            // disposed from the REPL, or the connection dropped
+        } finally {
+            quit = true;
+            stops.add(END);
+        }
+    }
+
+    // -------------------- Profiling --------------------
+
+    /**
+     * {@code --profile}: samples thread stacks instead of opening the REPL. Events are drained on a
+     * background thread only to keep a launched target running and to notice when it exits.
+     */
+    public void profile(SamplingProfiler.Options opts) throws IOException {
+        SamplingProfiler profiler = new SamplingProfiler(vm, opts, eventLog);
+        Thread pump = new Thread(() -> {
+            try {
+                while (true) {
+                    EventSet set = vm.eventQueue().remove();
+                    for (Event ev : set) {
+                        if (ev instanceof VMDeathEvent || ev instanceof VMDisconnectEvent) profiler.stop();
+                    }
+                    set.resume();
+                }
+            } catch (InterruptedException | VMDisconnectedException e) {
+                profiler.stop();
             }
+        }, "profile-event-pump");
+        pump.setDaemon(true);
+        pump.start();
+
+        CountDownLatch reported = new CountDownLatch(1);
+        Thread hook = new Thread(() -> { // Ctrl-C still produces the report
+            profiler.stop();
+            try { reported.await(5, TimeUnit.SECONDS); } catch (InterruptedException ignored) {}
+        }, "profile-shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+        println("[profile] sampling at " + opts.hz + " Hz" + (opts.allThreads ? " (all threads)" : ""));
+        try {
+            profiler.run();
+            profiler.report(System.out);
+        } finally {
+            reported.countDown();
+            try { Runtime.getRuntime().removeShutdownHook(hook); } catch (IllegalStateException ignored) {}
+        }
+    }
+
+    /** step-until: true once the condition holds (or the line limit is reached) on the stepping thread. */
+    private boolean arrived(StepRun r, StepEvent se) {
+        r.steps++;
+        if (r.steps >= stepLimit) {
+            println("[step] " + r.what + ": gave up after " + r.steps + " lines (--step-limit)");
+            return true;
+        }
+        try {
+            return r.until.test(StackPrinter.top(se.thread()), meta);
+        } catch (IllegalStateException e) {
+            return false; // not resolvable in this frame (stepped into or out of its method): keep going
+        } catch (IncompatibleThreadStateException e) {
+            return true;
+        }
+    }
+
+    /** Applies the debugger-side part of a breakpoint filter; re-arms VM-side "every N" count filters. */
+    private boolean passes(HitFilter hf, LocatableEvent be) {
+        hf.hits++;
+        boolean fire;
+        try {
+            fire = hf.test(be, meta);
+        } catch (IncompatibleThreadStateException | RuntimeException e) {
+            println("[warn] condition failed, stopping: " + hf.condition + ": " + e.getMessage());
+            fire = true;
+        }
+        if (!fire) {
+            hf.filtered++;
+            return false;
+        }
+        if (hf.rearm) rearm((BreakpointRequest) be.request());
+        return true;
+    }
+
+    /** Renders a logpoint while only the event thread is suspended; the caller resumes it right after. */
+    private void emitLogpoint(BreakpointEvent be) {
+        long t0 = System.nanoTime();
+        LogTemplate tpl = (LogTemplate) be.request().getProperty(LOG);
+        String msg;
+        try {
+            msg = tpl.render(StackPrinter.top(be.thread()), meta);
+        } catch (IncompatibleThreadStateException e) {
+            msg = "[thread not suspended]";
         }
+        String loc = locationString(be.location());
+        long micros = (System.nanoTime() - t0) / 1_000;
+        println("[Log] " + loc + " " + msg);
+        log("Logpoint", Map.of("location", loc, "thread", be.thread().name(),
+                "message", msg, "captureMicros", micros));
     }
 
     // -------------------- REPL --------------------
@@ -166,110 +747,361 @@ public final class Debugger {
             String cmd = parts[0];
             String arg = parts.length > 1 ? parts[1].trim() : "";
 
-            switch (cmd) {
-                case "help" -> printHelp();
-                case "break" -> {
-                    BreakpointSpec spec = BreakpointSpec.parse(arg);
-                    addBreakpoint(spec);
-                    System.out.println("Added breakpoint: " + spec);
-                }
-                case "list" -> listBreakpoints();
-                case "run", "resume", "c" -> { resumeSet(); return; }
-                case "step" -> {
-                    String which = arg.isEmpty() ? "over" : arg;
-                    createStep(which);
-                    resumeSet();
-                    return;
-                }
-                case "where", "stack" -> {
-                    ensureThread();
-                    StackPrinter.print(currentThread, System.out);
-                }
-                case "locals" -> {
-                    ensureThread();
-                    StackPrinter.printLocals(currentThread, System.out);
-                }
-                case "print" -> {
-                    ensureThread();
-                    printVar(arg);
-                }
-                case "threads" -> listThreads();
-                case "trace" -> {
-                    if ("on".equalsIgnoreCase(arg)) tracing = true;
-                    else if ("off".equalsIgnoreCase(arg)) tracing = false;
-                    System.out.println("trace=" + tracing);
+            RoundTrips.reset();
+            long started = System.nanoTime();
+            try {
+                switch (cmd) {
+                    case "help" -> printHelp();
+                    case "break" -> {
+                        BreakpointSpec spec = BreakpointSpec.parse(arg);
+                        addBreakpoint(spec);
+                        System.out.println("Added breakpoint: " + spec);
+                    }
+                    case "log" -> {
+                        // log <Class:line|Class#method> <template>
+                        String[] la = arg.split("\\s+", 2);
+                        if (la.length < 2) { System.out.println("Usage: log <Class:line|Class#method> <message {var} {this.field}>"); continue; }
+                        BreakpointSpec spec = BreakpointSpec.parse(la[0]).withLog(la[1]);
+                        addBreakpoint(spec);
+                        System.out.println("Added logpoint: " + spec);
+                    }
+                    case "watch" -> {
+                        BreakpointSpec spec = arg.isEmpty() ? null : BreakpointSpec.parse(arg);
+                        if (spec == null || !spec.isWatch()) {
+                            System.out.println("Usage: watch <Class.field> [on read|write] [suspend none] [thread NAME] [if COND] (expressions: display <expr>)");
+                            continue;
+                        }
+                        addBreakpoint(spec);
+                        System.out.println("Added watchpoint: " + spec);
+                    }
+                    case "display" -> displayCommand(arg);
+                    case "undisplay" -> {
+                        if (!arg.isEmpty() && !arg.matches("\\d+")) { System.out.println("Usage: undisplay [N]"); continue; }
+                        if (!undisplay(arg.isEmpty() ? 0 : Integer.parseInt(arg))) System.out.println("[no display " + arg + "]");
+                    }
+                    case "history" -> {
+                        String[] ha = arg.isEmpty() ? new String[0] : arg.split("\\s+");
+                        if (ha.length > 2 || (ha.length == 2 && !ha[1].matches("\\d+"))) { System.out.println("Usage: history [Class.field|field] [N]"); continue; }
+                        if (ha.length == 0 || ha[0].matches("\\d+")) {
+                            fieldHistory.printSummary(System.out);
+                        } else {
+                            int n = ha.length > 1 ? Integer.parseInt(ha[1]) : 20;
+                            for (FieldHistory.Change c : fieldHistory.changes(ha[0], n)) System.out.println(c);
+                        }
+                    }
+                    case "delete" -> {
+                        if (arg.isEmpty()) { System.out.println("Usage: delete <Class:line|Class#method|Class.field>"); continue; }
+                        System.out.println("Deleted " + removeBreakpoints(arg) + " breakpoint request(s) at " + arg);
+                    }
+                    case "list" -> listBreakpoints();
+                    case "run", "resume", "c" -> { resume(); return; }
+                    case "step" -> {
+                        // step [in|over|out] [N]
+                        String[] sa = arg.isEmpty() ? new String[0] : arg.split("\\s+");
+                        boolean counted = sa.length > 0 && sa[sa.length - 1].matches("\\d+");
+                        step(sa.length > (counted ? 1 : 0) ? sa[0] : "over", counted ? Integer.parseInt(sa[sa.length - 1]) : 1);
+                        return;
+                    }
+                    case "step-until" -> {
+                        if (arg.isEmpty()) { System.out.println("Usage: step-until <condition>"); continue; }
+                        stepUntil(arg);
+                        return;
+                    }
+                    case "until" -> {
+                        if (arg.isEmpty()) { System.out.println("Usage: until <Class:line|Class#method>"); continue; }
+                        if (runUntil(arg)) return;
+                    }
+                    case "where", "stack" -> {
+                        ensureThread();
+                        StackPrinter.print(currentThread, meta, System.out);
+                    }
+                    case "locals" -> {
+                        ensureThread();
+                        StackPrinter.printLocals(currentThread, meta, System.out);
+                    }
+                    case "print" -> {
+                        ensureThread();
+                        printVar(arg);
+                    }
+                    case "snap" -> {
+                        ensureThread();
+                        snapshot(arg);
+                    }
+                    case "threads" -> listThreads();
+                    case "dump" -> {
+                        if (!arg.isEmpty() && !arg.matches("\\d+")) { System.out.println("Usage: dump [GROUPS]"); continue; }
+                        threadDump().dump(System.out, arg.isEmpty() ? dumpOptions.groups : Integer.parseInt(arg));
+                    }
+                    case "methods" -> {
+                        if (tracer == null) System.out.println("[method tracing off: start with --trace-methods]");
+                        else if (!arg.isEmpty() && !arg.matches("\\d+")) System.out.println("Usage: methods [N]");
+                        else tracer.print(System.out, arg.isEmpty() ? 20 : Integer.parseInt(arg));
+                    }
+                    case "exceptions" -> {
+                        if (exceptionStats == null) System.out.println("[exception analytics off: use --exception-analytics or \"analytics\": true]");
+                        else if (!arg.matches("(\\d+)?\\s*(stacks)?")) System.out.println("Usage: exceptions [N] [stacks]");
+                        else exceptionStats.print(System.out, arg.matches("\\d+.*") ? Integer.parseInt(arg.split("\\s+")[0]) : 20,
+                                arg.endsWith("stacks"));
+                    }
+                    case "heap" -> heapCommand(arg);
+                    case "coverage" -> {
+                        if (coverage == null) System.out.println("[coverage off: start with --coverage]");
+                        else coverage.print(System.out, arg.isEmpty() ? null : arg);
+                    }
+                    case "reload" -> {
+                        if (configWatcher == null) System.out.println("[no config to reload: start with --bp]");
+                        else configWatcher.reload();
+                    }
+                    case "events" -> System.out.println("dispatch: " + dispatch + " waiting=" + stops.size());
+                    case "stats" -> {
+                        if ("reset".equalsIgnoreCase(arg)) metrics.reset();
+                        metrics.print(System.out);
+                        System.out.println("dispatch: " + dispatch + " waiting=" + stops.size());
+                    }
+                    case "cache" -> {
+                        if ("clear".equalsIgnoreCase(arg)) meta.clear();
+                        System.out.println("metadata cache: " + meta);
+                    }
+                    case "trace" -> {
+                        if ("on".equalsIgnoreCase(arg)) tracing = true;
+                        else if ("off".equalsIgnoreCase(arg)) tracing = false;
+                        System.out.println("trace=" + tracing);
+                    }
+                    case "quit", "exit" -> {
+                        dispose();
+                        quit = true;
+                        return;
+                    }
+                    default -> System.out.println("Unknown command: " + cmd + " (try 'help')");
                 }
-                case "quit", "exit" -> {
-                    dispose();
-                    quit = true;
-                    return;
+            } catch (IllegalArgumentException e) { // a mistyped command must not end the session
+                System.out.println("[" + e.getMessage() + "]");
+            } finally {
+                long rt = RoundTrips.count();
+                if (rt > 0) {
+                    long micros = (System.nanoTime() - started) / 1_000;
+                    if (tracing) System.out.println("[" + cmd + ": " + rt + " JDWP round-trips, " + micros + "us]");
+                    log("Command", Map.of("cmd", cmd, "roundTrips", rt, "micros", micros));
                 }
-                default -> System.out.println("Unknown command: " + cmd + " (try 'help')");
             }
         }
     }
 
+    /** display: the list with current values; display <expr>: adds one and shows it now. */
+    private void displayCommand(String arg) {
+        if (!arg.isEmpty()) {
+            try {
+                System.out.println("Display " + display(arg) + ": " + arg);
+            } catch (IllegalArgumentException e) {
+                System.out.println("[" + e.getMessage() + "]");
+                return;
+            }
+        }
+        Expression.Batch batch = displays;
+        if (batch == null) {
+            System.out.println("[no displays]");
+        } else if (currentThread != null) {
+            showDisplays();
+        } else {
+            for (int i = 0; i < batch.expressions().size(); i++) System.out.println((i + 1) + ": " + batch.expressions().get(i));
+        }
+    }
+
     private void printHelp() {
         System.out.println("""
             Commands:
               help
-              break <Class:line> | <Class#method>
+              break <Class:line> | <Class#method> | <Class#method(signature)>
+                    [hit N] [every N] [thread NAME] [suspend all|thread|none] [if COND]
+              watch <Class.field> [on read|write] [suspend none] [thread NAME] [if COND]
+              history [Class.field|field] [N]
+              log <Class:line|Class#method> <message {var} {this.field}>
+              delete <Class:line|Class#method|Class.field>
               list
               run | resume | c
-              step in|over|out
+              step [in|over|out] [N]
+              step-until <COND>
+              until <Class:line|Class#method>
               where | stack
               locals
-              print <name|this.field>
+              print <expr>                     e.g. this.map.table.length, a.b[3].c, n * 2 + 1
+              display [expr] | undisplay [N]   expressions shown at every stop
+              snap <expr> [depth N]
               threads
+              dump [GROUPS]
+              methods [N]
+              exceptions [N] [stacks]
+              heap [N] [PATTERN...] [growth] | heap show <Class> [N]
+              coverage [PATH-SUBSTRING]
+              reload
+              events
+              stats [reset]
+              cache [clear]
               trace on|off
               quit
             """);
     }
 
+    private void heapCommand(String arg) {
+        String[] ha = arg.isEmpty() ? new String[0] : arg.split("\\s+");
+        if (ha.length > 0 && ha[0].equals("show")) {
+            if (ha.length < 2) { System.out.println("Usage: heap show <Class> [N]"); return; }
+            HeapHistogram.sample(vm, meta, ha[1], ha.length > 2 ? Integer.parseInt(ha[2]) : 5, System.out);
+            return;
+        }
+        int top = heapOptions.top;
+        boolean growth = false;
+        List<String> patterns = new ArrayList<>();
+        for (String a : ha) {
+            if (a.matches("\\d+")) top = Integer.parseInt(a);
+            else if (a.equals("growth")) growth = true;
+            else patterns.add(a);
+        }
+        heap().snapshot(patterns, top, growth, System.out);
+    }
+
     private void listThreads() {
         for (ThreadReference t : vm.allThreads()) {
-            System.out.printf("[%s] id=%d state=%s suspended=%s%n",
-                    t.name(), t.uniqueID(), t.status(), t.isSuspended());
+            // suspendCount > 0 means the debugger holds the thread, whatever its Java state
+            int held = t.suspendCount();
+            System.out.printf("%s[%s] id=%d state=%s suspended=%s%s%n",
+                    t.equals(currentThread) ? "* " : "  ",
+                    t.name(), t.uniqueID(), t.status(), t.isSuspended(),
+                    held > 0 ? " (parked by debugger, count=" + held + ")" : "");
         }
     }
 
-    private void listBreakpoints() {
-        if (lineBreakpoints.isEmpty() && methodEntries.isEmpty()) {
+    private synchronized void listBreakpoints() {
+        if (registry.size() == 0) {
             System.out.println("[no breakpoints]");
         }
         lineBreakpoints.forEach((cls, list) -> list.forEach(bp -> {
             Location loc = bp.location();
-            System.out.printf("bp %s:%d%n", loc.declaringType().name(), loc.lineNumber());
+            System.out.printf("bp %s:%d%s%n", loc.declaringType().name(), loc.lineNumber(), describe(bp));
+        }));
+        methodBreakpoints.forEach((cls, list) -> list.forEach(bp -> {
+            Method m = bp.location().method();
+            System.out.printf("bp(method) %s#%s%s line=%d%s%n",
+                    cls, m.name(), m.signature(), bp.location().lineNumber(), describe(bp));
         }));
-        for (MethodEntryRequest m : methodEntries) {
-            System.out.println("bp(method) filter=" + m);
+        watchpoints.forEach((cls, list) -> list.forEach(wr -> System.out.printf("watch %s.%s%s%s%n",
+                wr.field().declaringType().name(), wr.field().name(),
+                wr instanceof AccessWatchpointRequest ? " on read" : "", describe(wr))));
+        Set<Object> installed = Collections.newSetFromMap(new IdentityHashMap<>());
+        lineBreakpoints.values().forEach(l -> l.forEach(bp -> installed.add(bp.getProperty(SPEC))));
+        methodBreakpoints.values().forEach(l -> l.forEach(bp -> installed.add(bp.getProperty(SPEC))));
+        watchpoints.values().forEach(l -> l.forEach(wr -> installed.add(wr.getProperty(SPEC))));
+        for (BreakpointSpec spec : registry.all()) {
+            if (!installed.contains(spec)) System.out.println("pending " + spec);
         }
+        System.out.println("registry: " + registry);
         System.out.flush();
     }
 
-    private void printVar(String name) {
-        if (name == null || name.isEmpty()) { System.out.println("Usage: print <name|this.field>"); return; }
+    private static String describe(EventRequest bp) {
+        BreakpointSpec spec = (BreakpointSpec) bp.getProperty(SPEC);
+        if (spec != null && spec.isFiltered()) return " [" + spec + "] " + bp.getProperty(FILTER);
+        Object tpl = bp.getProperty(LOG);
+        return tpl != null ? " log \"" + tpl + "\"" : "";
+    }
+
+    /** print <expr>: any {@link Expression}; {@code print this} also lists the fields. */
+    private void printVar(String expr) {
+        if (expr.isEmpty()) { System.out.println("Usage: print <expr>"); return; }
         try {
-            StackFrame f = currentThread.frame(0);
-            if (name.startsWith("this.")) {
-                ObjectReference thiz = f.thisObject();
-                if (thiz == null) { System.out.println("[no this]"); return; }
-                String fieldName = name.substring("this.".length());
-                Field fld = thiz.referenceType().fieldByName(fieldName);
-                if (fld == null) { System.out.println("[no such field]"); return; }
-                Value val = thiz.getValue(fld);
-                System.out.println(fieldName + " = " + VariableFormatter.format(val));
+            Object v = Expression.parse(expr).evaluate(StackPrinter.top(currentThread), meta);
+            if (expr.equals("this")) {
+                if (v == null) { System.out.println("[no this]"); return; }
+                System.out.println("this = " + render(v));
+                for (String line : VariableFormatter.formatFields((ObjectReference) v)) System.out.println("  " + line);
                 return;
             }
-            try {
-                LocalVariable v = f.visibleVariableByName(name);
-                Value val = f.getValue(v);
-                System.out.println(name + " = " + VariableFormatter.format(val));
-            } catch (AbsentInformationException e) {
-                System.out.println("[locals unavailable: " + e.getMessage() + "]");
-            }
+            System.out.println(expr + " = " + render(v));
+        } catch (IncompatibleThreadStateException e) {
+            System.out.println("[thread not suspended]");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println("[" + e.getMessage() + "]");
+        }
+    }
+
+    private static String render(Object v) {
+        if (v instanceof Value val) return VariableFormatter.format(val);
+        return v instanceof String str ? "\"" + str + "\"" : String.valueOf(v);
+    }
+
+    // -------------------- Display list --------------------
+
+    /** Adds an expression shown at every stop; returns its number. */
+    public synchronized int display(String expression) {
+        Expression e = Expression.parse(expression);
+        List<Expression> list = new ArrayList<>(displays != null ? displays.expressions() : List.of());
+        list.add(e);
+        displays = new Expression.Batch(list);
+        return list.size();
+    }
+
+    /** Removes display {@code n} (1-based), or all of them when {@code n} is 0. */
+    public synchronized boolean undisplay(int n) {
+        List<Expression> list = new ArrayList<>(displays != null ? displays.expressions() : List.of());
+        if (n == 0) list.clear();
+        else if (n < 1 || n > list.size()) return false;
+        else list.remove(n - 1);
+        displays = list.isEmpty() ? null : new Expression.Batch(list);
+        return true;
+    }
+
+    /**
+     * Evaluates the display list in the current thread's top frame and prints one line per expression.
+     * The list is one {@link Expression.Batch}, so a long list costs a handful of round-trips, not a
+     * handful per expression.
+     */
+    private void showDisplays() {
+        Expression.Batch batch = displays;
+        if (batch == null || currentThread == null) return;
+        long t0 = System.nanoTime();
+        List<Object> values;
+        try {
+            values = batch.evaluate(StackPrinter.top(currentThread), meta);
+        } catch (IncompatibleThreadStateException e) {
+            return;
+        }
+        Map<String, Object> shown = new LinkedHashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            Object v = values.get(i);
+            String text = v instanceof IllegalStateException ex ? "[" + ex.getMessage() + "]" : render(v);
+            String expr = batch.expressions().get(i).toString();
+            println("[display] " + (i + 1) + ": " + expr + " = " + text);
+            shown.put(expr, text);
+        }
+        log("Display", Map.of("values", shown, "micros", (System.nanoTime() - t0) / 1_000));
+    }
+
+    /** Shows the display list, then hands the stop to the handler. */
+    private void stopped(StopHandler handler, String reason, String location) throws Exception {
+        showDisplays();
+        handler.stopped(reason, currentThread, location);
+    }
+
+    private static final Pattern SNAP_DEPTH = Pattern.compile("(.*)\\s+depth\\s+(\\d+)");
+
+    /** snap <expr> [depth N]: bounded JSON snapshot of the value's object graph. */
+    private void snapshot(String arg) throws IOException {
+        if (arg.isEmpty()) { System.out.println("Usage: snap <expr> [depth N]"); return; }
+        ObjectSnapshot.Budget budget = snapshotBudget;
+        Matcher m = SNAP_DEPTH.matcher(arg);
+        if (m.matches()) {
+            arg = m.group(1);
+            budget = budget.withDepth(Integer.parseInt(m.group(2)));
+        }
+        try {
+            StackFrame f = StackPrinter.top(currentThread);
+            Object root = Expression.parse(arg).evaluate(f, meta);
+            ObjectSnapshot.write(root, budget, meta, System.out);
+            System.out.println();
         } catch (IncompatibleThreadStateException e) {
             System.out.println("[thread not suspended]");
+        } catch (IllegalStateException e) {
+            System.out.println("[" + e.getMessage() + "]");
         }
     }
 
@@ -277,16 +1109,179 @@ public final class Debugger {
         if (currentThread == null) System.out.println("[no current thread: wait for a breakpoint/step]");
     }
 
-    private void resumeSet() {
+    /** Resumes the current stop (the whole VM before the first one). */
+    public void resume() {
         if (currentEventSet != null) {
+            if (currentSetResumed) return;
+            currentSetResumed = true;
             try { currentEventSet.resume(); } catch (Exception ignored) {}
+            suspended(currentStop.events, System.nanoTime() - currentStop.received);
         } else {
             try { vm.resume(); } catch (Exception ignored) {}
         }
     }
 
-    private void createStep(String which) {
-        if (currentThread == null) { System.out.println("[cannot step: no suspended thread]"); return; }
+    /** Steps the current thread one line ({@code over}, {@code into} or {@code out}) and resumes. */
+    public void step(String which) {
+        step(which, 1);
+    }
+
+    /**
+     * Steps {@code lines} lines and resumes. The count is a filter on the step request, so the target
+     * steps through the lines in between without reporting them.
+     */
+    public void step(String which, int lines) {
+        if (lines < 1) throw new IllegalArgumentException("Line count must be >= 1: " + lines);
+        StepRequest sr = createStep(which, lines);
+        if (sr != null) startRun(new StepRun(which + (lines > 1 ? " " + lines : ""), null, lines), List.of(sr));
+        resume();
+    }
+
+    /**
+     * Steps over line by line until {@code condition} holds in the stepping thread's top frame. The
+     * pump evaluates it at each line and resumes without a stop until it does.
+     */
+    public void stepUntil(String condition) {
+        Expression until = Expression.parse(condition);
+        StepRequest sr = createStep("over", 0);
+        if (sr != null) startRun(new StepRun("until " + condition, until, 0), List.of(sr));
+        resume();
+    }
+
+    /**
+     * Runs to {@code location} ("Class:42" or "Class#method") with a one-shot breakpoint, in any thread.
+     * Returns false, without resuming, if the class is not loaded, has no code there, or a field was named.
+     */
+    public boolean runUntil(String location) {
+        BreakpointSpec spec = BreakpointSpec.parse(location);
+        if (spec.isWatch()) {
+            System.out.println("[until] expected Class:line or Class#method: " + location);
+            return false;
+        }
+        List<Location> targets = new ArrayList<>();
+        for (ReferenceType ref : meta.classesByName(vm, spec.className)) {
+            if (spec.kind == BreakpointSpec.Kind.LINE) {
+                try {
+                    List<Location> locs = meta.locationsOfLine(ref, spec.line);
+                    if (!locs.isEmpty()) targets.add(locs.get(0));
+                } catch (AbsentInformationException e) {
+                    // no line table: nothing to run to in this class
+                }
+            } else {
+                for (Method m : meta.methodsByName(ref, spec.methodName, spec.signature)) {
+                    if (m.location() != null) targets.add(m.location());
+                }
+            }
+        }
+        if (targets.isEmpty()) {
+            System.out.println("[until] " + location + ": class not loaded or no code there");
+            return false;
+        }
+        List<BreakpointRequest> requests = new ArrayList<>();
+        for (Location loc : targets) {
+            BreakpointRequest br = erm.createBreakpointRequest(loc);
+            br.setSuspendPolicy(stepPolicy());
+            br.addCountFilter(1);
+            requests.add(br);
+        }
+        startRun(new StepRun("to " + location, null, -1), requests);
+        resume();
+        return true;
+    }
+
+    private void startRun(StepRun r, List<? extends EventRequest> requests) {
+        for (EventRequest req : requests) {
+            req.putProperty(RUN, r);
+            r.requests.add(req);
+            req.enable();
+        }
+        run = r;
+    }
+
+    /**
+     * At each stop: ends the step / until in progress, whether this stop is where it arrived or an
+     * unrelated breakpoint got there first, and reports how long it ran.
+     */
+    private void endRun(Stop stop) {
+        StepRun r = run;
+        if (r == null || stop.set == null) return;
+        run = null;
+        boolean arrived = false;
+        for (Event ev : stop.events) {
+            if (ev.request() != null && ev.request().getProperty(RUN) == r) arrived = true;
+        }
+        for (EventRequest req : r.requests) {
+            try { erm.deleteEventRequest(req); } catch (RuntimeException ignored) {} // count filter may have expired it
+        }
+        long nanos = stop.received - r.started;
+        long lines = arrived && r.until == null ? r.lines : r.steps;
+        metrics.stepped(Math.max(lines, 0), nanos);
+        if (r.lines == 1 && arrived) return; // a plain step: counted, not reported
+        println(String.format("[step] %s: %s%s in %.1fms (stepping total %.1fms)", r.what,
+                arrived ? "arrived" : "interrupted", lines >= 0 ? " after " + lines + " line(s)" : "",
+                nanos / 1e6, metrics.getSteppingMicrosTotal() / 1e3));
+        log("Stepped", Map.of("run", r.what, "arrived", arrived, "lines", lines, "micros", nanos / 1_000));
+    }
+
+    /** Breakpoint, watchpoint and exception requests currently installed in the target. */
+    public int installedRequests() {
+        return erm.breakpointRequests().size() + erm.accessWatchpointRequests().size()
+                + erm.modificationWatchpointRequests().size() + erm.exceptionRequests().size();
+    }
+
+    /** False once the target has exited or disconnected. */
+    public boolean isConnected() {
+        return !quit;
+    }
+
+    /** The thread of the current stop, or null before the first one. */
+    public ThreadReference currentThread() {
+        return currentThread;
+    }
+
+    /** The locals of the current thread's top frame, rendered as the {@code locals} command shows them. */
+    public Map<String, String> captureLocals() {
+        try {
+            Map<String, String> out = new LinkedHashMap<>();
+            for (Map.Entry<LocalVariable, Value> e : StackPrinter.locals(suspendedThread(), meta).entrySet()) {
+                out.put(e.getKey().name(), VariableFormatter.format(e.getValue()));
+            }
+            return out;
+        } catch (AbsentInformationException e) {
+            throw new IllegalStateException("Locals unavailable: class compiled without -g:vars");
+        } catch (IncompatibleThreadStateException e) {
+            throw new IllegalStateException("Thread not suspended");
+        }
+    }
+
+    /** Evaluates an {@link Expression} in the current thread's top frame and renders the result. */
+    public String evaluate(String expression) {
+        Expression expr = Expression.parse(expression);
+        try {
+            StackFrame f = StackPrinter.top(suspendedThread());
+            return render(expr.evaluate(f, meta));
+        } catch (IncompatibleThreadStateException e) {
+            throw new IllegalStateException("Thread not suspended");
+        }
+    }
+
+    private ThreadReference suspendedThread() {
+        if (currentThread == null) throw new IllegalStateException("No current thread: wait for a breakpoint/step");
+        return currentThread;
+    }
+
+    /** Charges a resumed set's suspension to the overall histogram and to each breakpoint in it. */
+    private void suspended(Collection<? extends Event> events, long nanos) {
+        metrics.suspended(nanos);
+        for (Event ev : events) {
+            EventRequest r = ev.request();
+            if (r != null && r.getProperty(SPEC) instanceof BreakpointSpec spec) metrics.suspendedAt(spec, nanos);
+        }
+    }
+
+    /** A step request on the current thread, with the step exclusions; {@code lines} 0 = every line. Not enabled yet. */
+    private StepRequest createStep(String which, int lines) {
+        if (currentThread == null) { System.out.println("[cannot step: no suspended thread]"); return null; }
         // Clear old step requests for this thread
         for (StepRequest r : new ArrayList<>(erm.stepRequests())) {
             if (r.thread().equals(currentThread)) erm.deleteEventRequest(r);
@@ -297,76 +1292,270 @@ public final class Debugger {
             default -> StepRequest.STEP_OVER;
         };
         StepRequest sr = erm.createStepRequest(currentThread, StepRequest.STEP_LINE, depth);
-        sr.setSuspendPolicy(EventRequest.SUSPEND_ALL);
-        sr.addCountFilter(1); // one step
-        sr.enable();
+        sr.setSuspendPolicy(stepPolicy());
+        for (String p : stepExcludes) sr.addClassExclusionFilter(p); // before the count filter, so it counts only kept lines
+        if (lines > 0) sr.addCountFilter(lines);
+        return sr;
+    }
+
+    /** Step with the same policy as the stop we're stepping from (SUSPEND_NONE stops never reach the REPL). */
+    private int stepPolicy() {
+        int policy = currentEventSet != null ? currentEventSet.suspendPolicy() : defaultSuspend.jdi;
+        return policy == EventRequest.SUSPEND_NONE ? EventRequest.SUSPEND_EVENT_THREAD : policy;
     }
 
     // -------------------- Breakpoint installation --------------------
 
-    private void installClassPrepareForPending() {
-        if (!pendingBreakpoints.isEmpty()) {
-            ClassPrepareRequest cr = erm.createClassPrepareRequest();
-            // Limit noise: only classes mentioned
-            for (BreakpointSpec spec : pendingBreakpoints) {
-                cr.addClassFilter(spec.className);
-            }
-            cr.enable();
+    private synchronized void installPendingForClass(ReferenceType ref) {
+        for (BreakpointSpec spec : registry.matching(ref.name())) {
+            installBreakpointForType(spec, ref);
         }
     }
 
-    private void installPendingForClass(ReferenceType ref) {
-        List<BreakpointSpec> copy = new ArrayList<>(pendingBreakpoints);
-        for (BreakpointSpec spec : copy) {
-            if (spec.className.equals(ref.name())) {
-                installBreakpointForType(spec, ref);
+    private int installBreakpointIfLoaded(BreakpointSpec spec) {
+        int created = 0;
+        if (BreakpointRegistry.isPattern(spec.className)) {
+            for (ReferenceType ref : vm.allClasses()) {
+                if (ref.isPrepared() && BreakpointRegistry.matches(spec.className, ref.name())) {
+                    created += installBreakpointForType(spec, ref);
+                }
             }
+            return created;
         }
+        for (ReferenceType ref : meta.classesByName(vm, spec.className)) created += installBreakpointForType(spec, ref);
+        return created;
     }
 
-    private void installBreakpointIfLoaded(BreakpointSpec spec) {
-        List<ReferenceType> types = vm.classesByName(spec.className);
-        if (types != null && !types.isEmpty()) {
-            for (ReferenceType ref : types) installBreakpointForType(spec, ref);
+    /** A class prepared while {@link #addBreakpoint} was installing into loaded classes is seen twice. */
+    private boolean installedIn(BreakpointSpec spec, ReferenceType ref) {
+        if (spec.isWatch()) {
+            Field f = meta.fieldByName(ref, spec.fieldName);
+            for (WatchpointRequest wr : watchpoints.getOrDefault(ref.name(), List.of())) {
+                if (wr.getProperty(SPEC) == spec && wr.field().equals(f)) return true;
+            }
+            return false;
+        }
+        Map<String, List<BreakpointRequest>> byClass = spec.kind == BreakpointSpec.Kind.LINE ? lineBreakpoints : methodBreakpoints;
+        for (BreakpointRequest br : byClass.getOrDefault(ref.name(), List.of())) {
+            if (br.getProperty(SPEC) == spec && br.location().declaringType().equals(ref)) return true;
         }
+        return false;
     }
 
-    private void installBreakpointForType(BreakpointSpec spec, ReferenceType ref) {
-        if (spec.kind == BreakpointSpec.Kind.LINE) {
+    /** Returns the number of requests created. */
+    private int installBreakpointForType(BreakpointSpec spec, ReferenceType ref) {
+        if (installedIn(spec, ref)) return 0;
+        boolean quiet = BreakpointRegistry.isPattern(spec.className); // most matches of a pattern lack the line/method
+        if (spec.isWatch()) {
+            Field f = meta.fieldByName(ref, spec.fieldName);
+            if (f == null) {
+                if (!quiet) println("[warn] no field " + spec.fieldName + " in " + ref.name());
+                return 0;
+            }
+            if (spec.kind == BreakpointSpec.Kind.ACCESS ? !vm.canWatchFieldAccess() : !vm.canWatchFieldModification()) {
+                println("[warn] target VM cannot watch field " + (spec.kind == BreakpointSpec.Kind.ACCESS ? "reads" : "writes"));
+                return 0;
+            }
+            watchpoints.computeIfAbsent(ref.name(), k -> new ArrayList<>()).add(createWatchpointRequest(spec, f));
+            println("[watchpoint set] " + ref.name() + "." + f.name() + (spec.kind == BreakpointSpec.Kind.ACCESS ? " on read" : ""));
+            return 1;
+        } else if (spec.kind == BreakpointSpec.Kind.LINE) {
             try {
-                List<Location> locs = ref.locationsOfLine(spec.line);
+                List<Location> locs = meta.locationsOfLine(ref, spec.line);
                 if (!locs.isEmpty()) {
                     Location loc = locs.get(0);
-                    BreakpointRequest br = erm.createBreakpointRequest(loc);
-                    br.setSuspendPolicy(EventRequest.SUSPEND_ALL);
-                    br.enable();
+                    BreakpointRequest br = createBreakpointRequest(spec, loc);
                     lineBreakpoints.computeIfAbsent(ref.name(), k -> new ArrayList<>()).add(br);
                     println("[breakpoint set] " + ref.name() + ":" + spec.line);
-                } else {
-                    println("[warn] no code at " + ref.name() + ":" + spec.line);
+                    return 1;
                 }
+                if (!quiet) println("[warn] no code at " + ref.name() + ":" + spec.line);
             } catch (AbsentInformationException e) {
-                println("[warn] debug info absent for " + ref.name());
+                if (!quiet) println("[warn] debug info absent for " + ref.name());
             }
+            return 0;
         } else {
-            MethodEntryRequest mer = erm.createMethodEntryRequest();
-            mer.addClassFilter(ref.name());
-            mer.setSuspendPolicy(EventRequest.SUSPEND_ALL);
-            mer.enable();
-            methodEntries.add(mer);
-            println("[method-entry set] " + ref.name() + "#" + spec.methodName + " (note: class filtered; refine by method in production)");
+            // One breakpoint per matching overload, at its first executable location, instead of
+            // a class-wide MethodEntryRequest that stops on every method of the class.
+            List<Method> methods = meta.methodsByName(ref, spec.methodName, spec.signature);
+            int installed = 0;
+            for (Method m : methods) {
+                Location loc = m.location(); // null for abstract/native methods
+                if (loc == null) continue;
+                BreakpointRequest br = createBreakpointRequest(spec, loc);
+                methodBreakpoints.computeIfAbsent(ref.name(), k -> new ArrayList<>()).add(br);
+                println("[breakpoint set] " + ref.name() + "#" + m.name() + m.signature() + " line " + loc.lineNumber());
+                installed++;
+            }
+            if (installed == 0 && !quiet) {
+                println("[warn] no executable method " + spec + " in " + ref.name());
+            }
+            return installed;
         }
     }
 
-    // -------------------- Helpers --------------------
+    private BreakpointRequest createBreakpointRequest(BreakpointSpec spec, Location loc) {
+        BreakpointRequest br = erm.createBreakpointRequest(loc);
+        br.putProperty(SPEC, spec);
+        if (spec.isFiltered()) br.putProperty(FILTER, installFilters(spec, br));
+        SuspendPolicy policy = spec.suspend != null ? spec.suspend : defaultSuspend;
+        if (spec.isLogpoint()) {
+            // Logpoints park only the hitting thread, and only for the duration of the value capture.
+            br.putProperty(LOG, LogTemplate.compile(spec.log));
+            br.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+        } else if (spec.condition != null) {
+            br.setSuspendPolicy(policy.atLeastThread().jdi); // the condition reads the hitting frame
+        } else {
+            br.setSuspendPolicy(policy.jdi);
+        }
+        br.enable();
+        return br;
+    }
+
+    /** Unlike breakpoints, watchpoints keep "hit N" / "every N" counting in the debugger. */
+    private WatchpointRequest createWatchpointRequest(BreakpointSpec spec, Field f) {
+        WatchpointRequest wr = spec.kind == BreakpointSpec.Kind.ACCESS
+                ? erm.createAccessWatchpointRequest(f)
+                : erm.createModificationWatchpointRequest(f);
+        wr.putProperty(SPEC, spec);
+        if (spec.isFiltered()) {
+            ThreadReference t = spec.thread != null ? threadNamed(spec.thread) : null;
+            if (t != null) wr.addThreadFilter(t);
+            wr.putProperty(FILTER, new HitFilter(spec.condition != null ? Expression.parse(spec.condition) : null,
+                    spec.hitCount, spec.every, t != null ? null : spec.thread, false));
+        }
+        SuspendPolicy policy = spec.suspend != null ? spec.suspend : defaultSuspend;
+        wr.setSuspendPolicy((spec.condition != null ? policy.atLeastThread() : policy).jdi);
+        wr.enable();
+        return wr;
+    }
+
+    private ThreadReference threadNamed(String name) {
+        for (ThreadReference t : vm.allThreads()) {
+            if (name.equals(t.name())) return t;
+        }
+        return null;
+    }
+
+    /**
+     * Pushes what the target VM can evaluate itself into request filters (thread filter first, so the
+     * count filter only counts that thread); the rest is left to {@link HitFilter#test}.
+     */
+    private HitFilter installFilters(BreakpointSpec spec, BreakpointRequest br) {
+        boolean threadInVm = false;
+        if (spec.thread != null) {
+            ThreadReference t = threadNamed(spec.thread);
+            if (t != null) {
+                br.addThreadFilter(t);
+                threadInVm = true;
+            }
+        }
+        boolean countInVm = spec.condition == null && (spec.thread == null || threadInVm)
+                && (spec.hitCount > 0) != (spec.every > 0);
+        if (countInVm) br.addCountFilter(spec.hitCount > 0 ? spec.hitCount : spec.every);
+        return new HitFilter(
+                spec.condition != null ? Expression.parse(spec.condition) : null,
+                countInVm ? 0 : spec.hitCount,
+                countInVm ? 0 : spec.every,
+                threadInVm ? null : spec.thread,
+                countInVm && spec.every > 0);
+    }
 
-    private static String locationString(Location loc) {
-        String src = safeSource(loc);
-        return loc.declaringType().name() + "." + loc.method().name() + "(" + src + ":" + loc.lineNumber() + ")";
+    /** A count filter expires after it reports once, so "every N" gets a fresh request after each hit. */
+    private synchronized void rearm(BreakpointRequest old) {
+        BreakpointRequest fresh = createBreakpointRequest((BreakpointSpec) old.getProperty(SPEC), old.location());
+        fresh.putProperty(FILTER, old.getProperty(FILTER)); // keep the counters
+        for (List<BreakpointRequest> l : lineBreakpoints.values()) Collections.replaceAll(l, old, fresh);
+        for (List<BreakpointRequest> l : methodBreakpoints.values()) Collections.replaceAll(l, old, fresh);
+        erm.deleteEventRequest(old);
     }
 
-    private static String safeSource(Location loc) {
-        try { return loc.sourceName(); } catch (AbsentInformationException e) { return "UnknownSource"; }
+    /** A step, {@code step N}, {@code step-until} or {@code until} between leaving a stop and arriving. */
+    private static final class StepRun {
+        final String what;
+        final Expression until; // step-until condition, evaluated by the pump; null otherwise
+        final int lines;        // step N: the request's count filter; 0 step-until, -1 until
+        final long started = System.nanoTime();
+        final List<EventRequest> requests = new ArrayList<>();
+        long steps;             // lines seen by the pump (step-until)
+
+        StepRun(String what, Expression until, int lines) {
+            this.what = what;
+            this.until = until;
+            this.lines = lines;
+        }
+    }
+
+    /** Debugger-side part of a conditional / hit-count breakpoint, plus what filtering it has cost. */
+    private static final class HitFilter {
+        final Expression condition; // null = no condition
+        final int hitCount;         // 0 = off or enforced by the VM's count filter
+        final int every;            // 0 = off or enforced by the VM's count filter
+        final String threadName;    // null = off or enforced by the VM's thread filter
+        final boolean rearm;        // every-N enforced by a count filter that must be re-created per report
+        long hits, filtered, filteredNanos, timed, counted; // timed = filtered hits in filteredNanos
+
+        HitFilter(Expression condition, int hitCount, int every, String threadName, boolean rearm) {
+            this.condition = condition;
+            this.hitCount = hitCount;
+            this.every = every;
+            this.threadName = threadName;
+            this.rearm = rearm;
+        }
+
+        boolean test(LocatableEvent be, MetadataCache meta) throws IncompatibleThreadStateException {
+            if (threadName != null && !threadName.equals(be.thread().name())) return false;
+            if (condition != null && !condition.test(StackPrinter.top(be.thread()), meta)) return false;
+            long n = ++counted;
+            if (hitCount > 0 && n != hitCount) return false;
+            return every == 0 || n % every == 0;
+        }
+
+        @Override public String toString() {
+            long avgMicros = timed == 0 ? 0 : filteredNanos / timed / 1_000;
+            return "hits=" + hits + " filtered=" + filtered + " avgFilteredHit=" + avgMicros + "us";
+        }
+    }
+
+    /**
+     * Pump / REPL hand-off metrics. Pump-side fields are written only by the pump thread, REPL-side
+     * ones only by the REPL thread. "auto" times cover receipt to resume of sets handled by the pump;
+     * "wait" times cover receipt to the REPL picking a stop up.
+     */
+    private static final class DispatchStats {
+        volatile long sets, events, autoSets, autoNanos, maxAutoNanos, queued, maxDepth; // pump
+        volatile long taken, waitNanos, maxWaitNanos;                                  // REPL
+
+        void pumped(int size, long autoTook, int depth) {
+            sets++;
+            events += size;
+            if (autoTook >= 0) {
+                autoSets++;
+                autoNanos += autoTook;
+                maxAutoNanos = Math.max(maxAutoNanos, autoTook);
+            } else {
+                queued++;
+            }
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        void taken(long waited) {
+            taken++;
+            waitNanos += waited;
+            maxWaitNanos = Math.max(maxWaitNanos, waited);
+        }
+
+        @Override public String toString() {
+            return String.format("sets=%d events=%d auto=%d (avg=%dus max=%dus) stops=%d (maxDepth=%d, wait avg=%dus max=%dus)",
+                    sets, events, autoSets, autoSets == 0 ? 0 : autoNanos / autoSets / 1_000, maxAutoNanos / 1_000,
+                    queued, maxDepth, taken == 0 ? 0 : waitNanos / taken / 1_000, maxWaitNanos / 1_000);
+        }
+    }
+
+    // -------------------- Helpers --------------------
+
+    private String locationString(Location loc) {
+        return meta.locationString(loc);
     }
 
     private static LaunchingConnector findLaunchingConnector() {
@@ -381,52 +1570,60 @@ public final class Debugger {
     }
 
     private void println(String s) {
-        System.out.println(s);
+        out.println(s);
         if (tracing) log("trace", Map.of("msg", s));
     }
 
-    private void log(String event, Map<String, ?> fields) {
-        if (logWriter == null) return;
-        try {
-            Map<String, Object> obj = new LinkedHashMap<>();
-            obj.put("ts", Instant.now().toString());
-            obj.put("event", event);
-            obj.putAll(fields);
-            logWriter.println(toJson(obj));
-            logWriter.flush();
-        } catch (Exception ignored) {}
-    }
-
-    private static String toJson(Map<String, ?> m) {
-        StringBuilder b = new StringBuilder("{");
-        boolean first = true;
-        for (var e : m.entrySet()) {
-            if (!first) b.append(',');
-            first = false;
-            b.append('"').append(e.getKey()).append('"').append(':');
-            Object v = e.getValue();
-            if (v == null) b.append("null");
-            else if (v instanceof Number || v instanceof Boolean) b.append(v.toString());
-            else b.append('"').append(escape(v.toString())).append('"');
-        }
-        b.append('}');
-        return b.toString();
-    }
-
-    /**
-     * Escapes backslashes and double quotes in a string for JSON-like output.
-     *
-     * @param s the input string
-     * @return the escaped string with backslashes doubled and double quotes prefixed with a backslash
-     */
-    private static String escape(String s) {
-        // First replace backslashes ("\\") with double backslashes ("\\\\").
-        // Then replace double quotes ("\"") with an escaped version ("\\\"").
-        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    void log(String event, Map<String, ?> fields) {
+        if (eventLog != null) eventLog.append(event, fields);
+        if (recorder != null) {
+            try {
+                recorder.record(event, fields);
+            } catch (UncheckedIOException e) {
+                out.println("[warn] recording stopped: " + e.getCause().getMessage());
+            }
+        }
     }
 
     public void dispose() {
+        if (tracerDumper != null) tracerDumper.interrupt();
+        if (tracer != null) {
+            tracer.print(out, 20);
+            if (eventLog != null) tracer.dump(eventLog, Integer.MAX_VALUE);
+            tracer = null; // dispose runs from quit and again from DebugCLI's finally
+        }
+        if (exceptionSummarizer != null) exceptionSummarizer.interrupt();
+        if (heapWatcher != null) heapWatcher.interrupt();
+        if (dumpWatcher != null) dumpWatcher.interrupt();
+        if (threadDump != null) threadDump.close();
+        if (statsLogger != null) statsLogger.interrupt();
+        if (configWatcher != null) configWatcher.stop();
+        metrics.unregister();
+        if (exceptionStats != null) {
+            exceptionStats.summary(out, 10);
+            exceptionStats.print(out, 20, false);
+            exceptionStats = null;
+        }
+        if (coverage != null) {
+            coverage.stop();
+            coverage.print(out, null);
+            coverage = null;
+        }
         try { if (vm != null) vm.dispose(); } catch (Exception ignored) {}
-        if (logWriter != null) try { logWriter.close(); } catch (Exception ignored) {}
+        if (eventLog != null) {
+            log("Dispatch", Map.of("sets", dispatch.sets, "autoSets", dispatch.autoSets, "stops", dispatch.queued,
+                    "maxDepth", dispatch.maxDepth, "maxAutoMicros", dispatch.maxAutoNanos / 1_000,
+                    "maxWaitMicros", dispatch.maxWaitNanos / 1_000));
+            metrics.logTo(eventLog);
+            log("LogStats", Map.of("enqueued", eventLog.enqueued(), "dropped", eventLog.dropped(),
+                    "commits", eventLog.commits()));
+            eventLog.close();
+        }
+        if (recorder != null) {
+            recorder.close();
+            println("[record] " + recorder.records() + " events in " + recorder.segments() + " segment(s), "
+                    + recorder.stringCount() + " strings");
+            recorder = null;
+        }
     }
 }
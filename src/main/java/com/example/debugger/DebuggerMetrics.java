@@ -0,0 +1,215 @@
+package com.example.debugger;
+
+import com.sun.jdi.event.*;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.management.ObjectName;
+
+/**
+ * What the debugger costs the target: events by kind, how long each stop kept threads suspended
+ * (per breakpoint and overall), how long stops sat in the REPL, how long steps took to arrive, JDWP
+ * round-trip times (from {@link RoundTrips}) and the event log backlog. Recording is
+ * allocation-free: counters are {@link LongAdder}s, histograms are preallocated, and a breakpoint's
+ * histogram is created once when it first suspends. Shown by the {@code stats} command, registered
+ * as an MXBean, and logged as {@code Stats} records with {@code --stats-ms}.
+ */
+public final class DebuggerMetrics implements DebuggerMetricsMXBean {
+    public enum Kind { breakpoint, step, watchpoint, exception, methodEntry, methodExit, classPrepare, classUnload, thread, vm, other }
+
+    private static final AtomicInteger IDS = new AtomicInteger();
+    private static final Function<BreakpointSpec, LatencyHistogram> NEW_HISTOGRAM = k -> new LatencyHistogram();
+
+    private final LongAdder[] events = new LongAdder[Kind.values().length];
+    private final LatencyHistogram suspended = new LatencyHistogram();
+    private final Map<BreakpointSpec, LatencyHistogram> suspendedBySpec = new ConcurrentHashMap<>();
+    private final LatencyHistogram replDwell = new LatencyHistogram();
+    private final LatencyHistogram stepping = new LatencyHistogram();
+    private final LongAdder steppedLines = new LongAdder();
+    private final LongAccumulator maxBacklog = new LongAccumulator(Math::max, 0);
+    private final EventLog log; // may be null
+    private volatile long since = System.nanoTime();
+    private long lastTotal, lastNanos = since; // for the rate between two 'stats' calls
+    private ObjectName name;
+
+    public DebuggerMetrics(EventLog log) {
+        this.log = log;
+        for (int i = 0; i < events.length; i++) events[i] = new LongAdder();
+    }
+
+    static Kind kind(Event e) {
+        if (e instanceof BreakpointEvent) return Kind.breakpoint;
+        if (e instanceof StepEvent) return Kind.step;
+        if (e instanceof WatchpointEvent) return Kind.watchpoint;
+        if (e instanceof ExceptionEvent) return Kind.exception;
+        if (e instanceof MethodEntryEvent) return Kind.methodEntry;
+        if (e instanceof MethodExitEvent) return Kind.methodExit;
+        if (e instanceof ClassPrepareEvent) return Kind.classPrepare;
+        if (e instanceof ClassUnloadEvent) return Kind.classUnload;
+        if (e instanceof ThreadStartEvent || e instanceof ThreadDeathEvent) return Kind.thread;
+        if (e instanceof VMStartEvent || e instanceof VMDeathEvent || e instanceof VMDisconnectEvent) return Kind.vm;
+        return Kind.other;
+    }
+
+    // -------------------- Recording (event pump / REPL thread) --------------------
+
+    public void event(Event e) {
+        events[kind(e).ordinal()].increment();
+    }
+
+    /** A stop or auto-resumed event set that kept threads suspended for {@code nanos}. */
+    public void suspended(long nanos) {
+        suspended.record(nanos);
+    }
+
+    /** The same time charged to a breakpoint that was part of the set. */
+    public void suspendedAt(BreakpointSpec spec, long nanos) {
+        suspendedBySpec.computeIfAbsent(spec, NEW_HISTOGRAM).record(nanos);
+    }
+
+    public void replDwell(long nanos) {
+        replDwell.record(nanos);
+    }
+
+    /** A step, step N, step-until or until that ran {@code lines} lines (0 if unknown) in {@code nanos}. */
+    public void stepped(long lines, long nanos) {
+        stepping.record(nanos);
+        steppedLines.add(lines);
+    }
+
+    public void sampleBacklog() {
+        if (log != null) maxBacklog.accumulate(log.backlog());
+    }
+
+    // -------------------- JMX --------------------
+
+    /** Registers under the platform MBean server; failures only cost the JMX view. */
+    public void register(String target) {
+        try {
+            name = new ObjectName("com.example.debugger:type=Debugger,id=" + IDS.incrementAndGet()
+                    + ",target=" + ObjectName.quote(target));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        } catch (Exception e) {
+            name = null;
+        }
+    }
+
+    public void unregister() {
+        if (name == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (Exception ignored) {
+            // already gone
+        }
+        name = null;
+    }
+
+    @Override public Map<String, Long> getEventCounts() {
+        Map<String, Long> m = new LinkedHashMap<>();
+        for (Kind k : Kind.values()) {
+            long n = events[k.ordinal()].sum();
+            if (n > 0) m.put(k.name(), n);
+        }
+        return m;
+    }
+
+    @Override public long getEventsTotal() {
+        long n = 0;
+        for (LongAdder a : events) n += a.sum();
+        return n;
+    }
+
+    @Override public double getEventsPerSecond() {
+        double secs = (System.nanoTime() - since) / 1e9;
+        return secs <= 0 ? 0 : getEventsTotal() / secs;
+    }
+
+    @Override public long getStops() { return suspended.count(); }
+    @Override public long getSuspendedMicrosTotal() { return suspended.sum() / 1_000; }
+    @Override public long getSuspendP99Micros() { return suspended.percentile(99) / 1_000; }
+
+    @Override public Map<String, Long> getSuspendP99MicrosByBreakpoint() {
+        Map<String, Long> m = new LinkedHashMap<>();
+        suspendedBySpec.forEach((spec, h) -> m.put(spec.toString(), h.percentile(99) / 1_000));
+        return m;
+    }
+
+    @Override public Map<String, Long> getRoundTripP99Micros() {
+        Map<String, Long> m = new LinkedHashMap<>();
+        for (RoundTrips.Call c : RoundTrips.Call.values()) {
+            LatencyHistogram h = RoundTrips.latency(c);
+            if (h.count() > 0) m.put(c.name(), h.percentile(99) / 1_000);
+        }
+        return m;
+    }
+
+    @Override public long getReplDwellP50Micros() { return replDwell.percentile(50) / 1_000; }
+    @Override public long getReplDwellMaxMicros() { return replDwell.max() / 1_000; }
+    @Override public long getSteppingMicrosTotal() { return stepping.sum() / 1_000; }
+    @Override public long getLogBacklog() { return log != null ? log.backlog() : 0; }
+    @Override public long getLogMaxBacklog() { return maxBacklog.get(); }
+    @Override public long getLogDropped() { return log != null ? log.dropped() : 0; }
+
+    @Override public void reset() {
+        for (LongAdder a : events) a.reset();
+        suspended.reset();
+        suspendedBySpec.values().forEach(LatencyHistogram::reset);
+        replDwell.reset();
+        stepping.reset();
+        steppedLines.reset();
+        maxBacklog.reset();
+        synchronized (this) {
+            lastTotal = 0;
+            lastNanos = since = System.nanoTime();
+        }
+    }
+
+    // -------------------- Reporting --------------------
+
+    public synchronized void print(PrintStream out) {
+        long now = System.nanoTime(), total = getEventsTotal();
+        double recent = now > lastNanos ? (total - lastTotal) / ((now - lastNanos) / 1e9) : 0;
+        lastTotal = total;
+        lastNanos = now;
+        out.printf("events: total=%d rate=%.1f/s (since last stats %.1f/s) %s%n", total, getEventsPerSecond(), recent, getEventCounts());
+        out.println("suspended: " + suspended + " total=" + getSuspendedMicrosTotal() / 1_000 + "ms");
+        suspendedBySpec.forEach((spec, h) -> out.println("  " + spec + ": " + h));
+        for (RoundTrips.Call c : RoundTrips.Call.values()) {
+            LatencyHistogram h = RoundTrips.latency(c);
+            if (h.count() > 0) out.println("jdwp " + c + ": " + h);
+        }
+        out.println("repl dwell: " + replDwell);
+        if (stepping.count() > 0) {
+            out.println("stepping: " + stepping + " lines=" + steppedLines.sum() + " total=" + getSteppingMicrosTotal() / 1_000 + "ms");
+        }
+        if (log != null) {
+            out.println("log: backlog=" + log.backlog() + " maxBacklog=" + maxBacklog.get() + " dropped=" + log.dropped()
+                    + " written=" + log.written());
+        }
+    }
+
+    /** One {@code Stats} record with the headline numbers. */
+    public void logTo(EventLog target) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("eventsTotal", getEventsTotal());
+        m.put("eventsPerSecond", Math.round(getEventsPerSecond() * 10) / 10.0);
+        m.put("events", getEventCounts());
+        m.put("stops", getStops());
+        m.put("suspendedMicros", getSuspendedMicrosTotal());
+        m.put("suspendP99Micros", getSuspendP99Micros());
+        m.put("jdwpP99Micros", getRoundTripP99Micros());
+        m.put("replDwellP50Micros", getReplDwellP50Micros());
+        m.put("steppingMicros", getSteppingMicrosTotal());
+        m.put("logBacklog", getLogBacklog());
+        m.put("logMaxBacklog", getLogMaxBacklog());
+        m.put("logDropped", getLogDropped());
+        target.append("Stats", m);
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.debugger;
+
+import java.util.Map;
+
+/** JMX view of {@link DebuggerMetrics}: {@code com.example.debugger:type=Debugger,id=N,target=...}. */
+public interface DebuggerMetricsMXBean {
+    Map<String, Long> getEventCounts();
+    long getEventsTotal();
+    double getEventsPerSecond();
+    long getStops();
+    long getSuspendedMicrosTotal();
+    long getSuspendP99Micros();
+    Map<String, Long> getSuspendP99MicrosByBreakpoint();
+    Map<String, Long> getRoundTripP99Micros();
+    long getReplDwellP50Micros();
+    long getReplDwellMaxMicros();
+    long getSteppingMicrosTotal();
+    long getLogBacklog();
+    long getLogMaxBacklog();
+    long getLogDropped();
+    void reset();
+}
@@ -0,0 +1,207 @@
+package com.example.debugger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * JSONL event log off the JDI event thread. {@link #append} only stamps the record and puts it on a
+ * {@link RingBuffer}; a background writer serializes batches and group-commits them to a
+ * {@link FileChannel} every {@code flushEvents} records or {@code flushMillis}, whichever comes first.
+ * {@link #forTarget} returns a view that tags every record with a target and shares the buffer,
+ * writer and file, so several debuggers write one merged log.
+ */
+public final class EventLog implements Closeable {
+    public enum Backpressure { drop, block }
+
+    public static final class Options {
+        public int capacity = 8192;
+        public long flushMillis = 200;
+        public int flushEvents = 512;
+        public boolean fsync = false;   // force() each commit, not just write()
+        public Backpressure backpressure = Backpressure.drop;
+    }
+
+    private record Entry(Instant ts, String target, String event, Map<String, ?> fields) {}
+
+    private final RingBuffer<Entry> queue;
+    private final FileChannel channel;
+    private final Options opts;
+    private final Thread writer;
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long written;
+    private volatile long commits;
+    private volatile boolean closed;
+    private final EventLog root;  // this, or the log a target view writes into
+    private final String target;  // null for the root
+
+    private EventLog(FileChannel channel, Options opts) {
+        this.channel = channel;
+        this.opts = opts;
+        this.queue = new RingBuffer<>(opts.capacity);
+        this.root = this;
+        this.target = null;
+        this.writer = new Thread(this::writeLoop, "event-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private EventLog(EventLog root, String target) {
+        this.channel = root.channel;
+        this.opts = root.opts;
+        this.queue = root.queue;
+        this.writer = root.writer;
+        this.root = root;
+        this.target = target;
+    }
+
+    public static EventLog open(Path path, Options opts) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new EventLog(ch, opts);
+    }
+
+    /** A view whose records carry {@code "target"}; closing it leaves this log open. */
+    public EventLog forTarget(String target) {
+        return new EventLog(root, target);
+    }
+
+    /** Never touches the disk. Returns false if the record was dropped because the buffer is full. */
+    public boolean append(String event, Map<String, ?> fields) {
+        if (root.closed) return false;
+        Entry e = new Entry(Instant.now(), target, event, fields);
+        while (!queue.offer(e)) {
+            if (opts.backpressure == Backpressure.drop || root.closed) {
+                root.dropped.incrementAndGet();
+                LockSupport.unpark(writer);
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(50_000);
+        }
+        root.enqueued.incrementAndGet();
+        if (queue.size() > queue.capacity() / 2) LockSupport.unpark(writer); // don't wait for the timer
+        return true;
+    }
+
+    public long enqueued() { return root.enqueued.get(); }
+    public long dropped() { return root.dropped.get(); }
+    public long written() { return root.written; }
+    public long commits() { return root.commits; }
+    /** Records accepted but not yet written. */
+    public int backlog() { return queue.size(); }
+
+    private void writeLoop() {
+        StringBuilder sb = new StringBuilder(64 * 1024);
+        long pending = 0;
+        long lastCommit = System.nanoTime();
+        long flushNanos = TimeUnit.MILLISECONDS.toNanos(opts.flushMillis);
+        while (true) {
+            boolean done = closed; // read before draining so nothing appended before close() is lost
+            Entry e;
+            while ((e = queue.poll()) != null) {
+                sb.append(toJson(e.ts, e.target, e.event, e.fields)).append('\n');
+                pending++;
+                if (pending >= opts.flushEvents) break;
+            }
+            long now = System.nanoTime();
+            if (pending > 0 && (done || pending >= opts.flushEvents || now - lastCommit >= flushNanos)) {
+                commit(sb);
+                written += pending;
+                pending = 0;
+                lastCommit = now;
+            }
+            if (done && queue.size() == 0) break;
+            if (queue.size() == 0) {
+                long wait = pending > 0 ? flushNanos - (now - lastCommit) : flushNanos;
+                LockSupport.parkNanos(Math.max(wait, TimeUnit.MILLISECONDS.toNanos(1)));
+            }
+        }
+    }
+
+    private void commit(StringBuilder sb) {
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) channel.write(buf);
+            if (opts.fsync) channel.force(false);
+            commits++;
+        } catch (IOException ignored) {
+            // the debugger keeps running without its log
+        }
+        sb.setLength(0);
+    }
+
+    /** Drains everything accepted so far, commits it and closes the file. */
+    @Override public void close() {
+        if (root != this || closed) return;
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try { channel.force(false); } catch (IOException ignored) {}
+        try { channel.close(); } catch (IOException ignored) {}
+    }
+
+    // -------------------- JSON --------------------
+
+    static String toJson(Instant ts, String event, Map<String, ?> m) {
+        return toJson(ts, null, event, m);
+    }
+
+    static String toJson(Instant ts, String target, String event, Map<String, ?> m) {
+        StringBuilder b = new StringBuilder(128);
+        b.append("{\"ts\":\"").append(ts).append('"');
+        if (target != null) b.append(",\"target\":\"").append(escape(target)).append('"');
+        b.append(",\"event\":\"").append(escape(event)).append('"');
+        for (var e : m.entrySet()) {
+            b.append(',').append('"').append(e.getKey()).append('"').append(':');
+            Object v = e.getValue();
+            if (v == null) b.append("null");
+            else if (v instanceof Number || v instanceof Boolean) b.append(v.toString());
+            else b.append('"').append(escape(v.toString())).append('"');
+        }
+        b.append('}');
+        return b.toString();
+    }
+
+    /**
+     * Escapes a string for use inside a JSON string literal: backslashes, double quotes and control
+     * characters (so a captured value containing a newline cannot split a JSONL record).
+     *
+     * @param s the input string
+     * @return the escaped string
+     */
+    static String escape(String s) {
+        StringBuilder b = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String rep = switch (c) {
+                case '\\' -> "\\\\";
+                case '"' -> "\\\"";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                case '\t' -> "\\t";
+                default -> c < 0x20 ? String.format("\\u%04x", (int) c) : null;
+            };
+            if (rep == null) {
+                if (b != null) b.append(c);
+            } else {
+                if (b == null) b = new StringBuilder(s.length() + 16).append(s, 0, i);
+                b.append(rep);
+            }
+        }
+        return b == null ? s : b.toString();
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.debugger;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Stop on exceptions of {@code type} (and subtypes), or of every type when {@code type} is null.
+ * {@code include} / {@code exclude} are class patterns for the throwing location's class. With
+ * {@code analytics} the exception is counted in the {@link ExceptionStats} table instead of stopping.
+ */
+public final class ExceptionRule {
+    public final String type;
+    public final boolean caught;
+    public final boolean uncaught;
+    public final SuspendPolicy suspend; // null = debugger default
+    public final List<String> include;  // empty = thrown anywhere
+    public final List<String> exclude;
+    public final boolean analytics;
+
+    public ExceptionRule(String type, boolean caught, boolean uncaught, SuspendPolicy suspend) {
+        this(type, caught, uncaught, suspend, List.of(), List.of(), false);
+    }
+
+    public ExceptionRule(String type, boolean caught, boolean uncaught, SuspendPolicy suspend,
+                         List<String> include, List<String> exclude, boolean analytics) {
+        if (!caught && !uncaught) throw new IllegalArgumentException("Exception rule matches nothing: " + type);
+        this.type = type;
+        this.caught = caught;
+        this.uncaught = uncaught;
+        this.suspend = suspend;
+        this.include = List.copyOf(include);
+        this.exclude = List.copyOf(exclude);
+        this.analytics = analytics;
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ExceptionRule r)) return false;
+        return Objects.equals(type, r.type) && caught == r.caught && uncaught == r.uncaught && suspend == r.suspend
+                && include.equals(r.include) && exclude.equals(r.exclude) && analytics == r.analytics;
+    }
+
+    @Override public int hashCode() {
+        return Objects.hash(type, caught, uncaught, suspend, include, exclude, analytics);
+    }
+
+    @Override public String toString() {
+        return (type != null ? type : "*")
+                + (caught && uncaught ? " caught+uncaught" : caught ? " caught" : " uncaught")
+                + (suspend != null ? " suspend=" + suspend : "")
+                + (include.isEmpty() ? "" : " in " + include)
+                + (exclude.isEmpty() ? "" : " not in " + exclude)
+                + (analytics ? " analytics" : "");
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.debugger;
+
+import com.sun.jdi.ClassType;
+import com.sun.jdi.IncompatibleThreadStateException;
+import com.sun.jdi.Location;
+import com.sun.jdi.ObjectCollectedException;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.StackFrame;
+import com.sun.jdi.VMDisconnectedException;
+import com.sun.jdi.event.ExceptionEvent;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.ExceptionRequest;
+import com.sun.jdi.request.InvalidRequestStateException;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Exception analytics: instead of stopping, every exception from an analytics rule is counted under
+ * (exception type, throw location, catch location). A key's first occurrence captures one sample
+ * stack while only the event thread is suspended; later ones cost the exception's type, one JDWP
+ * round-trip (none when the rule's exception class is final), and a map lookup. Per-key records are
+ * rate limited, and {@link #summary} reports counts and deltas since the previous summary.
+ * <p>
+ * A request can only suspend for all its exceptions or for none, so a sampling request stops
+ * suspending once {@code SETTLED} exceptions in a row brought no new key, and suspends again when an
+ * unsampled key turns up, so that key's next occurrence is sampled. Each switch disables and
+ * re-enables the request, and exceptions thrown during those two round-trips are not counted.
+ */
+public final class ExceptionStats {
+    public static final class Options {
+        public long summaryMillis = 10_000; // 0 = only at exit and on 'exceptions'
+        public int ratePerKey = 5;          // console/log records per key per second; the rest are only counted
+        public int stackDepth = 32;         // frames kept in the sample stack
+    }
+
+    static final String STATS = "exceptionStats";       // ExceptionRequest property holding this table
+    static final String SAMPLING = "exceptionSampling"; // ExceptionRequest property: may suspend for samples
+    private static final int SETTLED = 64;
+
+    /** A rethrow site throws many types from one location, so the type is part of the key. */
+    private record Key(ReferenceType type, Location thrown, Location caught) {}
+
+    private static final class Entry {
+        final String type, thrown, caught;
+        final long firstSeen = System.currentTimeMillis();
+        long lastSeen;
+        long count, suppressed, reported; // reported = count at the previous summary
+        long windowStart;
+        int windowCount;
+        boolean sampled;
+        List<String> stack = List.of();
+
+        Entry(String type, String thrown, String caught) {
+            this.type = type;
+            this.thrown = thrown;
+            this.caught = caught;
+        }
+    }
+
+    private final Options opts;
+    private final MetadataCache meta;
+    private final EventLog log; // may be null
+    private final PrintStream out;
+    private final Map<Key, Entry> table = new HashMap<>();
+    private final Map<EventRequest, Integer> settling = new HashMap<>(); // suspending requests: known keys in a row
+    private long total, reportedTotal;
+
+    public ExceptionStats(Options opts, MetadataCache meta, EventLog log, PrintStream out) {
+        this.opts = opts;
+        this.meta = meta;
+        this.log = log;
+        this.out = out;
+    }
+
+    /** Called on the event pump while the throwing thread may be suspended; the caller resumes it. */
+    public synchronized void record(ExceptionEvent ee, long received) {
+        Key key = new Key(exceptionType(ee), ee.location(), ee.catchLocation());
+        EventRequest req = ee.request();
+        boolean suspended = req.suspendPolicy() != EventRequest.SUSPEND_NONE;
+        Entry e = table.get(key);
+        if (e == null) {
+            e = new Entry(key.type != null ? key.type.name() : "java.lang.Throwable", meta.locationString(key.thrown),
+                    key.caught != null ? meta.locationString(key.caught) : "uncaught");
+            table.put(key, e);
+        }
+        if (!e.sampled && suspended) {
+            e.stack = sampleStack(ee);
+            e.sampled = true;
+            settling.put(req, 0);
+        } else if (!e.sampled) {
+            if (Boolean.TRUE.equals(req.getProperty(SAMPLING))) suspend(req, true); // sample its next occurrence
+        } else if (suspended && settling.merge(req, 1, Integer::sum) >= SETTLED) {
+            suspend(req, false);
+        }
+        e.count++;
+        total++;
+        e.lastSeen = System.currentTimeMillis();
+        if (received - e.windowStart >= 1_000_000_000L) {
+            e.windowStart = received;
+            e.windowCount = 0;
+        }
+        if (e.windowCount++ >= opts.ratePerKey) {
+            e.suppressed++;
+            return;
+        }
+        out.println("[Exception] " + e.type + " at " + e.thrown + " -> " + e.caught
+                + " thread=" + ee.thread().name() + " #" + e.count);
+        if (log != null) {
+            log.append("Exception", Map.of("exception", e.type, "location", e.thrown, "catch", e.caught,
+                    "thread", ee.thread().name(), "count", e.count));
+        }
+    }
+
+    /**
+     * The thrown object's type. A final rule type is the only one the request can report, so it needs
+     * no round-trip; otherwise the mirror is asked (and caches it, so a rethrown object is asked once).
+     * Once the object or the VM is gone the rule's type stands in, null for a catch-all rule; events
+     * queued before a VM exit are then still counted.
+     */
+    private static ReferenceType exceptionType(ExceptionEvent ee) {
+        ReferenceType t = ((ExceptionRequest) ee.request()).exception();
+        if (t instanceof ClassType c && c.isFinal()) return t;
+        try {
+            return ee.exception().referenceType();
+        } catch (ObjectCollectedException | VMDisconnectedException ex) {
+            return t;
+        }
+    }
+
+    private void suspend(EventRequest req, boolean on) {
+        settling.remove(req);
+        try {
+            req.disable(); // the policy of an enabled request cannot change
+            req.setSuspendPolicy(on ? EventRequest.SUSPEND_EVENT_THREAD : EventRequest.SUSPEND_NONE);
+            req.enable();
+        } catch (InvalidRequestStateException | VMDisconnectedException ex) {
+            // the rule was removed meanwhile, or the VM exited with events still queued
+        }
+    }
+
+    private List<String> sampleStack(ExceptionEvent ee) {
+        try {
+            List<StackFrame> frames = StackPrinter.frames(ee.thread());
+            List<String> out = new ArrayList<>(Math.min(frames.size(), opts.stackDepth));
+            for (int i = 0; i < frames.size() && i < opts.stackDepth; i++) {
+                out.add(meta.locationString(frames.get(i).location()));
+            }
+            return out;
+        } catch (IncompatibleThreadStateException | VMDisconnectedException e) {
+            return List.of();
+        }
+    }
+
+    public synchronized int keys() { return table.size(); }
+    public synchronized long total() { return total; }
+
+    /** Keys ordered by count, highest first. */
+    private List<Entry> ranked() {
+        List<Entry> l = new ArrayList<>(table.values());
+        l.sort((a, b) -> Long.compare(b.count, a.count));
+        return l;
+    }
+
+    public synchronized void print(PrintStream out, int top, boolean stacks) {
+        List<Entry> l = ranked();
+        out.printf("%10s %10s  %s%n", "count", "suppressed", "exception / thrown at -> caught at");
+        for (int i = 0; i < Math.min(top, l.size()); i++) {
+            Entry e = l.get(i);
+            out.printf("%10d %10d  %s at %s -> %s%n", e.count, e.suppressed, e.type, e.thrown, e.caught);
+            if (stacks) e.stack.forEach(f -> out.println("             " + f));
+        }
+        out.println("[exceptions] keys=" + l.size() + " total=" + total);
+    }
+
+    /**
+     * Prints the keys that grew since the previous summary (top N by growth) and logs one
+     * ExceptionSummary record per such key. Does nothing if no exception was counted meanwhile.
+     */
+    public synchronized void summary(PrintStream out, int top) {
+        long delta = total - reportedTotal;
+        if (delta == 0) return;
+        reportedTotal = total;
+        List<Entry> grown = new ArrayList<>();
+        for (Entry e : table.values()) {
+            if (e.count > e.reported) grown.add(e);
+        }
+        grown.sort((a, b) -> Long.compare(b.count - b.reported, a.count - a.reported));
+        out.println("[exceptions] +" + delta + " total=" + total + " keys=" + table.size());
+        for (int i = 0; i < grown.size(); i++) {
+            Entry e = grown.get(i);
+            long d = e.count - e.reported;
+            e.reported = e.count;
+            if (i < top) out.printf("  +%d %s at %s -> %s%n", d, e.type, e.thrown, e.caught);
+            if (log != null) {
+                log.append("ExceptionSummary", Map.of("exception", e.type, "location", e.thrown,
+                        "catch", e.caught, "count", e.count, "delta", d, "suppressed", e.suppressed,
+                        "firstSeen", e.firstSeen, "lastSeen", e.lastSeen, "stack", String.join("; ", e.stack)));
+            }
+        }
+    }
+}
@@ -0,0 +1,570 @@
+package com.example.debugger;
+
+import com.sun.jdi.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A debugger-side expression such as {@code i == 7 && this.counter > 3} or {@code this.map.table.length},
+ * parsed once into a node tree and evaluated against a suspended frame. Operands are locals,
+ * {@code this}, bare field names and literals, followed by any path of {@code .field}, {@code [index]}
+ * and {@code .length} (arrays and strings); operators are {@code + - * / %} on numbers (and {@code +}
+ * on strings), comparisons, {@code && || !} and parentheses. Strings compare by value.
+ * <p>
+ * Every value is fetched once per evaluation, one batch per level: all referenced locals in one
+ * {@code getValues} round-trip, all fields of {@code this} in another, and below that every field read
+ * from the same path prefix (or every constant index into the same array) in one call for that
+ * object. The locals and fields are resolved against {@link MetadataCache} once and kept for as long
+ * as the frame's location and the objects' types stay the same. A {@link Batch} shares all of this
+ * across a list of expressions.
+ */
+public final class Expression {
+    private static final int MAX_SLICE = 64; // constant indices further apart are fetched one by one
+
+    private final String source;
+    private final Node root;
+    private final Fetches fetches = new Fetches();
+
+    private Expression(String source) {
+        this.source = source;
+        Parser p = new Parser(source, fetches);
+        this.root = p.parseOr();
+        if (p.peek() != null) throw new IllegalArgumentException("Unexpected '" + p.peek() + "' in: " + source);
+    }
+
+    public static Expression parse(String source) {
+        Objects.requireNonNull(source, "source");
+        if (source.isBlank()) throw new IllegalArgumentException("Empty expression");
+        return new Expression(source.trim());
+    }
+
+    /** Evaluates to Boolean, Long, Double, Character, String, an ObjectReference, or null. */
+    public Object evaluate(StackFrame f, MetadataCache meta) {
+        return root.eval(new Scope(f, meta, fetches));
+    }
+
+    /** Evaluates a condition; non-boolean results are an error. */
+    public boolean test(StackFrame f, MetadataCache meta) {
+        Object v = evaluate(f, meta);
+        if (v instanceof Boolean b) return b;
+        throw new IllegalStateException("Condition is not boolean: " + source + " -> " + v);
+    }
+
+    @Override public String toString() {
+        return source;
+    }
+
+    /** Expressions evaluated together against one frame, each value fetched once for all of them. */
+    public static final class Batch {
+        private final List<Expression> expressions;
+        private final Fetches fetches = new Fetches();
+
+        public Batch(List<Expression> expressions) {
+            this.expressions = List.copyOf(expressions);
+            for (Expression e : expressions) fetches.addAll(e.fetches);
+        }
+
+        public List<Expression> expressions() {
+            return expressions;
+        }
+
+        /** One result per expression: its value, or the IllegalStateException evaluating it threw. */
+        public List<Object> evaluate(StackFrame f, MetadataCache meta) {
+            Scope s = new Scope(f, meta, fetches);
+            List<Object> out = new ArrayList<>(expressions.size());
+            for (Expression e : expressions) {
+                try {
+                    out.add(e.root.eval(s));
+                } catch (IllegalStateException ex) {
+                    out.add(ex);
+                }
+            }
+            return out;
+        }
+    }
+
+    // -------------------- Evaluation --------------------
+
+    private interface Node {
+        Object eval(Scope s);
+    }
+
+    /** The locals and fields of {@code this} the root names resolve to at one location. */
+    private record Roots(Location at, ReferenceType type, List<LocalVariable> locals, List<Field> fields) {}
+
+    /** The fields read below one path, resolved for the last type its value had. */
+    private record Resolved(ReferenceType type, List<Field> fields) {}
+
+    /** The first elements fetched from one array path; {@code values.get(i)} is element {@code from + i}. */
+    private record Slice(int from, List<Value> values) {}
+
+    /**
+     * What evaluations fetch, collected while parsing: root names, and per path (its source text, the
+     * same value within one evaluation) the fields read from its value and the range of constant
+     * indices into it. Resolved handles are cached here, monomorphically.
+     */
+    private static final class Fetches {
+        final Set<String> names = new LinkedHashSet<>();      // bare identifiers: local, else field
+        final Set<String> thisFields = new LinkedHashSet<>(); // this.<field>
+        final Map<String, Set<String>> fields = new HashMap<>();
+        final Map<String, int[]> indices = new HashMap<>();   // {min, max}
+        final Map<String, Resolved> resolved = new ConcurrentHashMap<>();
+        volatile Roots roots;
+
+        void field(String path, String name) {
+            fields.computeIfAbsent(path, k -> new LinkedHashSet<>()).add(name);
+        }
+
+        void index(String path, int min, int max) {
+            indices.merge(path, new int[] {min, max}, (a, b) -> new int[] {Math.min(a[0], b[0]), Math.max(a[1], b[1])});
+        }
+
+        void addAll(Fetches o) {
+            names.addAll(o.names);
+            thisFields.addAll(o.thisFields);
+            o.fields.forEach((path, set) -> set.forEach(n -> field(path, n)));
+            o.indices.forEach((path, r) -> index(path, r[0], r[1]));
+        }
+
+        Roots roots(StackFrame frame, ReferenceType type, boolean hasThis, MetadataCache meta) {
+            Location at = frame.location();
+            Roots r = roots;
+            if (r != null && r.at.equals(at) && r.type.equals(type)) return r;
+            List<LocalVariable> locals = new ArrayList<>(names.size());
+            Set<String> fieldNames = new LinkedHashSet<>(thisFields);
+            try {
+                for (String n : names) {
+                    LocalVariable v = meta.visibleVariableByName(frame, n);
+                    if (v != null) locals.add(v);
+                    else fieldNames.add(n);
+                }
+            } catch (AbsentInformationException ex) {
+                fieldNames.addAll(names);
+            }
+            List<Field> found = new ArrayList<>(fieldNames.size());
+            for (String n : fieldNames) {
+                Field fld = meta.fieldByName(type, n);
+                if (fld != null && (hasThis || fld.isStatic())) found.add(fld);
+            }
+            r = new Roots(at, type, List.copyOf(locals), List.copyOf(found));
+            roots = r;
+            return r;
+        }
+
+        List<Field> resolve(String path, ReferenceType type, MetadataCache meta) {
+            Resolved r = resolved.get(path);
+            if (r == null || !r.type.equals(type)) {
+                List<Field> found = new ArrayList<>();
+                for (String n : fields.getOrDefault(path, Set.of())) {
+                    Field fld = meta.fieldByName(type, n);
+                    if (fld != null) found.add(fld);
+                }
+                r = new Resolved(type, List.copyOf(found));
+                resolved.put(path, r);
+            }
+            return r.fields;
+        }
+    }
+
+    /** Values fetched for one evaluation: the roots up front, each deeper level when first read. */
+    private static final class Scope {
+        final StackFrame frame;
+        final MetadataCache meta;
+        final Fetches fetches;
+        final Map<String, Object> values = new HashMap<>();
+        final ObjectReference thisObject;
+        final Map<String, Map<String, Value>> objects = new HashMap<>(); // path -> fields fetched from its value
+        final Map<String, Slice> slices = new HashMap<>();
+
+        Scope(StackFrame frame, MetadataCache meta, Fetches fetches) {
+            this.frame = frame;
+            this.meta = meta;
+            this.fetches = fetches;
+            this.thisObject = frame.thisObject();
+            RoundTrips.add(1);
+            if (fetches.names.isEmpty() && fetches.thisFields.isEmpty()) return;
+            ReferenceType type = thisObject != null ? thisObject.referenceType() : frame.location().declaringType();
+            Roots r = fetches.roots(frame, type, thisObject != null, meta);
+            if (!r.locals.isEmpty()) {
+                long t0 = System.nanoTime();
+                Map<LocalVariable, Value> got = frame.getValues(r.locals);
+                RoundTrips.timed(RoundTrips.Call.getValues, t0);
+                got.forEach((v, val) -> values.put(v.name(), unwrap(val)));
+            }
+            if (!r.fields.isEmpty()) {
+                long t0 = System.nanoTime();
+                Map<Field, Value> got = thisObject != null ? thisObject.getValues(r.fields) : type.getValues(r.fields);
+                RoundTrips.timed(RoundTrips.Call.getValues, t0);
+                got.forEach((fld, val) -> values.put("this." + fld.name(), unwrap(val)));
+            }
+        }
+
+        Object lookup(String key, String display) {
+            if (!values.containsKey(key)) throw new IllegalStateException("Cannot resolve '" + display + "'");
+            return values.get(key);
+        }
+
+        /** {@code base.name}; {@code path} is the source text of {@code base}, null if it is not a path. */
+        Object member(Object base, String path, String name) {
+            if (base instanceof ArrayReference arr && name.equals("length")) return (long) arr.length();
+            if (base instanceof String str && name.equals("length")) return (long) str.length();
+            if (!(base instanceof ObjectReference o)) {
+                throw new IllegalStateException("Cannot read '" + name + "' of " + base + (path != null ? ": " + path : ""));
+            }
+            Map<String, Value> got = path != null ? objects.get(path) : null;
+            if (got == null) {
+                ReferenceType type = o.referenceType();
+                List<Field> fields;
+                if (path != null) {
+                    fields = fetches.resolve(path, type, meta);
+                } else {
+                    Field fld = meta.fieldByName(type, name);
+                    fields = fld != null ? List.of(fld) : List.of();
+                }
+                got = new HashMap<>();
+                if (!fields.isEmpty()) {
+                    long t0 = System.nanoTime();
+                    Map<Field, Value> vals = o.getValues(fields); // every field read from this path, at once
+                    RoundTrips.timed(RoundTrips.Call.getValues, t0);
+                    for (Map.Entry<Field, Value> e : vals.entrySet()) got.put(e.getKey().name(), e.getValue());
+                }
+                if (path != null) objects.put(path, got);
+            }
+            if (!got.containsKey(name)) throw new IllegalStateException("No field '" + name + "' in " + o.referenceType().name());
+            return unwrap(got.get(name));
+        }
+
+        /** {@code base[index]}; constant indices into the same path come back in one slice. */
+        Object element(Object base, String path, Object index) {
+            if (!(base instanceof ArrayReference arr)) {
+                throw new IllegalStateException("Not an array: " + base + (path != null ? ": " + path : ""));
+            }
+            if (!(index instanceof Long) && !(index instanceof Character)) throw new IllegalStateException("Index is not an integer: " + index);
+            long i = toLong(index);
+            int length = arr.length();
+            if (i < 0 || i >= length) throw new IllegalStateException("Index " + i + " out of bounds for length " + length);
+            int[] range = path != null ? fetches.indices.get(path) : null;
+            if (range != null && range[1] - range[0] < MAX_SLICE && i >= range[0] && i <= range[1]) {
+                Slice slice = slices.get(path);
+                if (slice == null) {
+                    int from = Math.max(range[0], 0), to = Math.min(range[1], length - 1);
+                    long t0 = System.nanoTime();
+                    slice = new Slice(from, arr.getValues(from, to - from + 1));
+                    RoundTrips.timed(RoundTrips.Call.getValues, t0);
+                    slices.put(path, slice);
+                }
+                return unwrap(slice.values.get((int) i - slice.from));
+            }
+            long t0 = System.nanoTime();
+            Value v = arr.getValue((int) i);
+            RoundTrips.timed(RoundTrips.Call.getValues, t0);
+            return unwrap(v);
+        }
+    }
+
+    static Object unwrap(Value v) {
+        if (v == null) return null;
+        if (v instanceof BooleanValue b) return b.value();
+        if (v instanceof CharValue c) return c.value();
+        if (v instanceof FloatValue || v instanceof DoubleValue) return ((PrimitiveValue) v).doubleValue();
+        if (v instanceof PrimitiveValue p) return p.longValue();
+        if (v instanceof StringReference s) return s.value();
+        return v; // ObjectReference
+    }
+
+    private static Object compare(String op, Object a, Object b) {
+        if (op.equals("==") || op.equals("!=")) {
+            boolean eq = (isNumeric(a) && isNumeric(b)) ? compareNumbers(a, b) == 0 : Objects.equals(a, b);
+            return op.equals("==") == eq;
+        }
+        if (!isNumeric(a) || !isNumeric(b)) {
+            throw new IllegalStateException("Operator " + op + " needs numbers: " + a + " " + op + " " + b);
+        }
+        int c = compareNumbers(a, b);
+        return switch (op) {
+            case "<" -> c < 0;
+            case "<=" -> c <= 0;
+            case ">" -> c > 0;
+            default -> c >= 0;
+        };
+    }
+
+    private static Object arithmetic(String op, Object a, Object b) {
+        if (op.equals("+") && (a instanceof String || b instanceof String)) return String.valueOf(a) + b;
+        if (!isNumeric(a) || !isNumeric(b)) {
+            throw new IllegalStateException("Operator " + op + " needs numbers: " + a + " " + op + " " + b);
+        }
+        if (a instanceof Double || b instanceof Double) {
+            double x = toDouble(a), y = toDouble(b);
+            return switch (op) {
+                case "+" -> x + y;
+                case "-" -> x - y;
+                case "*" -> x * y;
+                case "/" -> x / y;
+                default -> x % y;
+            };
+        }
+        long x = toLong(a), y = toLong(b);
+        if (y == 0 && (op.equals("/") || op.equals("%"))) throw new IllegalStateException("Division by zero: " + a + " " + op + " " + b);
+        return switch (op) {
+            case "+" -> x + y;
+            case "-" -> x - y;
+            case "*" -> x * y;
+            case "/" -> x / y;
+            default -> x % y;
+        };
+    }
+
+    private static boolean isNumeric(Object o) {
+        return o instanceof Long || o instanceof Double || o instanceof Character;
+    }
+
+    private static int compareNumbers(Object a, Object b) {
+        if (a instanceof Double || b instanceof Double) return Double.compare(toDouble(a), toDouble(b));
+        return Long.compare(toLong(a), toLong(b));
+    }
+
+    private static long toLong(Object o) {
+        return o instanceof Character c ? c : ((Number) o).longValue();
+    }
+
+    private static double toDouble(Object o) {
+        return o instanceof Character c ? c : ((Number) o).doubleValue();
+    }
+
+    private static boolean truth(Object o, String display) {
+        if (o instanceof Boolean b) return b;
+        throw new IllegalStateException("Not a boolean: " + display + " -> " + o);
+    }
+
+    // -------------------- Parsing --------------------
+
+    private static final class Parser {
+        private final List<String> tokens;
+        private final String source;
+        private final Fetches fetches;
+        private int pos = 0;
+        private String path; // source text of the last primary when it is a path, else null
+
+        Parser(String source, Fetches fetches) {
+            this.source = source;
+            this.fetches = fetches;
+            this.tokens = tokenize(source);
+        }
+
+        String peek() {
+            return pos < tokens.size() ? tokens.get(pos) : null;
+        }
+
+        private boolean accept(String t) {
+            if (t.equals(peek())) { pos++; return true; }
+            return false;
+        }
+
+        private String next() {
+            String t = peek();
+            if (t == null) throw new IllegalArgumentException("Unexpected end of expression: " + source);
+            pos++;
+            return t;
+        }
+
+        Node parseOr() {
+            Node left = parseAnd();
+            while (accept("||")) {
+                Node l = left, r = parseAnd();
+                left = s -> truth(l.eval(s), "||") || truth(r.eval(s), "||");
+            }
+            return left;
+        }
+
+        private Node parseAnd() {
+            Node left = parseComparison();
+            while (accept("&&")) {
+                Node l = left, r = parseComparison();
+                left = s -> truth(l.eval(s), "&&") && truth(r.eval(s), "&&");
+            }
+            return left;
+        }
+
+        private Node parseComparison() {
+            Node left = parseAdditive();
+            String op = peek();
+            if (op != null && (op.equals("==") || op.equals("!=") || op.equals("<") || op.equals("<=")
+                    || op.equals(">") || op.equals(">="))) {
+                pos++;
+                Node l = left, r = parseAdditive();
+                return s -> compare(op, l.eval(s), r.eval(s));
+            }
+            return left;
+        }
+
+        private Node parseAdditive() {
+            Node left = parseMultiplicative();
+            for (String op; (op = peek()) != null && (op.equals("+") || op.equals("-")); ) {
+                pos++;
+                Node l = left, r = parseMultiplicative();
+                String o = op;
+                left = s -> arithmetic(o, l.eval(s), r.eval(s));
+            }
+            return left;
+        }
+
+        private Node parseMultiplicative() {
+            Node left = parseUnary();
+            for (String op; (op = peek()) != null && (op.equals("*") || op.equals("/") || op.equals("%")); ) {
+                pos++;
+                Node l = left, r = parseUnary();
+                String o = op;
+                left = s -> arithmetic(o, l.eval(s), r.eval(s));
+            }
+            return left;
+        }
+
+        private Node parseUnary() {
+            if (accept("!")) {
+                Node inner = parseUnary();
+                return s -> !truth(inner.eval(s), "!");
+            }
+            if (accept("-")) {
+                Node inner = parseUnary();
+                return s -> {
+                    Object v = inner.eval(s);
+                    if (v instanceof Double d) return -d;
+                    if (v instanceof Long l) return -l;
+                    throw new IllegalStateException("Cannot negate: " + v);
+                };
+            }
+            return parsePostfix();
+        }
+
+        /** A primary followed by {@code .name} and {@code [index]} steps, each registered under its base path. */
+        private Node parsePostfix() {
+            Node node = parsePrimary();
+            String at = path;
+            while (true) {
+                Node base = node;
+                String basePath = at;
+                if (accept(".")) {
+                    String name = identifier();
+                    if (basePath != null) fetches.field(basePath, name);
+                    node = s -> s.member(base.eval(s), basePath, name);
+                    at = basePath != null ? basePath + "." + name : null;
+                } else if (accept("[")) {
+                    int start = pos;
+                    Node index = parseOr();
+                    String text = String.join(" ", tokens.subList(start, pos));
+                    if (!accept("]")) throw new IllegalArgumentException("Missing ']' in: " + source);
+                    if (basePath != null && pos - start == 2 && text.matches("\\d{1,9}")) {
+                        int i = Integer.parseInt(text);
+                        fetches.index(basePath, i, i);
+                    }
+                    node = s -> s.element(base.eval(s), basePath, index.eval(s));
+                    at = basePath != null ? basePath + "[" + text + "]" : null;
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private Node parsePrimary() {
+            path = null;
+            String t = next();
+            if (t.equals("(")) {
+                Node inner = parseOr();
+                if (!accept(")")) throw new IllegalArgumentException("Missing ')' in: " + source);
+                path = null;
+                return inner;
+            }
+            char c = t.charAt(0);
+            if (c == '"') {
+                String v = t.substring(1, t.length() - 1);
+                return s -> v;
+            }
+            if (c == '\'') {
+                Character v = t.charAt(1);
+                return s -> v;
+            }
+            if (Character.isDigit(c)) {
+                Object v = parseNumber(t);
+                return s -> v;
+            }
+            switch (t) {
+                case "true": return s -> Boolean.TRUE;
+                case "false": return s -> Boolean.FALSE;
+                case "null": return s -> null;
+                case "this": {
+                    if (accept(".")) {
+                        String field = identifier();
+                        fetches.thisFields.add(field);
+                        String key = "this." + field;
+                        path = key;
+                        return s -> s.lookup(key, key);
+                    }
+                    path = "this";
+                    return s -> s.thisObject;
+                }
+                default:
+                    if (!Character.isJavaIdentifierStart(c)) throw new IllegalArgumentException("Unexpected '" + t + "' in: " + source);
+                    fetches.names.add(t);
+                    path = t;
+                    // a bare name is a local when one is visible, otherwise a field of this/the declaring type
+                    return s -> s.values.containsKey(t) ? s.values.get(t) : s.lookup("this." + t, t);
+            }
+        }
+
+        private String identifier() {
+            String t = next();
+            if (!Character.isJavaIdentifierStart(t.charAt(0))) throw new IllegalArgumentException("Expected identifier, got '" + t + "' in: " + source);
+            return t;
+        }
+
+        private Object parseNumber(String t) {
+            try {
+                String lower = t.toLowerCase(Locale.ROOT);
+                if (lower.endsWith("l")) return Long.parseLong(t.substring(0, t.length() - 1));
+                if (lower.contains(".") || lower.contains("e") || lower.endsWith("d") || lower.endsWith("f")) {
+                    return Double.parseDouble(t);
+                }
+                return Long.parseLong(t);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad number '" + t + "' in: " + source);
+            }
+        }
+
+        private static List<String> tokenize(String src) {
+            List<String> out = new ArrayList<>();
+            int i = 0;
+            while (i < src.length()) {
+                char c = src.charAt(i);
+                if (Character.isWhitespace(c)) { i++; continue; }
+                int start = i;
+                if (c == '"' || c == '\'') {
+                    i++;
+                    while (i < src.length() && src.charAt(i) != c) i++;
+                    if (i >= src.length()) throw new IllegalArgumentException("Unterminated literal in: " + src);
+                    out.add(src.substring(start, ++i));
+                } else if (Character.isDigit(c)) {
+                    while (i < src.length() && (Character.isLetterOrDigit(src.charAt(i)) || src.charAt(i) == '.')) i++;
+                    out.add(src.substring(start, i));
+                } else if (Character.isJavaIdentifierStart(c)) {
+                    while (i < src.length() && Character.isJavaIdentifierPart(src.charAt(i))) i++;
+                    out.add(src.substring(start, i));
+                } else {
+                    String two = i + 1 < src.length() ? src.substring(i, i + 2) : "";
+                    if (two.equals("==") || two.equals("!=") || two.equals("<=") || two.equals(">=")
+                            || two.equals("&&") || two.equals("||")) {
+                        out.add(two);
+                        i += 2;
+                    } else if ("()[]<>!+-*/%.".indexOf(c) >= 0) {
+                        out.add(String.valueOf(c));
+                        i++;
+                    } else {
+                        throw new IllegalArgumentException("Unexpected '" + c + "' in: " + src);
+                    }
+                }
+            }
+            return out;
+        }
+    }
+}
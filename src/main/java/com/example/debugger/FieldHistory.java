@@ -0,0 +1,106 @@
+package com.example.debugger;
+
+import com.sun.jdi.*;
+import com.sun.jdi.event.ModificationWatchpointEvent;
+import com.sun.jdi.event.WatchpointEvent;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * The last {@code capacity} reads / writes of each watched field, for the {@code history} command.
+ * Recording costs no JDWP round-trip when the thread is not suspended: the new value travels in the
+ * event, primitives render locally, objects as "declaredType@id", and the old value is the last new
+ * value seen for the same object (or "?"). When the thread is suspended the old value is read from
+ * the target instead, which also catches writes made before the watchpoint existed.
+ */
+public final class FieldHistory {
+    public record Change(Instant at, String thread, String location, String object,
+                         String oldValue, String newValue, boolean read) {
+        @Override public String toString() {
+            return at + " [" + thread + "] " + location + " " + object
+                    + (read ? " read " + newValue : " " + oldValue + " -> " + newValue);
+        }
+    }
+
+    private static final int LAST_VALUES = 4096; // objects per field whose last value is remembered
+
+    private static final class Ring {
+        final String name;
+        final Change[] slots;
+        long total;
+        final Map<Long, String> lastValues = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Long, String> e) { return size() > LAST_VALUES; }
+        };
+
+        Ring(String name, int capacity) {
+            this.name = name;
+            this.slots = new Change[capacity];
+        }
+    }
+
+    private final int capacity;
+    private final Map<Field, Ring> rings = new LinkedHashMap<>();
+    private final Map<Long, String> threadNames = new HashMap<>(); // name() is a round-trip per call
+
+    public FieldHistory(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("history capacity must be >= 1: " + capacity);
+        this.capacity = capacity;
+    }
+
+    /** Called on the event pump; {@code suspended} says whether the event thread is parked. */
+    public synchronized Change record(WatchpointEvent we, boolean suspended, MetadataCache meta) {
+        Field f = we.field();
+        Ring r = rings.computeIfAbsent(f, k -> new Ring(k.declaringType().name() + "." + k.name(), capacity));
+        ObjectReference obj = we.object(); // null for static fields
+        long key = obj != null ? obj.uniqueID() : 0;
+        String object = obj != null ? "@" + obj.uniqueID() : "static";
+        String known = r.lastValues.getOrDefault(key, "?");
+        String oldValue = suspended ? render(we.valueCurrent(), f, true) : known;
+        boolean read = !(we instanceof ModificationWatchpointEvent);
+        String newValue = read ? oldValue : render(((ModificationWatchpointEvent) we).valueToBe(), f, suspended);
+        r.lastValues.put(key, newValue);
+        ThreadReference t = we.thread();
+        String thread = threadNames.computeIfAbsent(t.uniqueID(), id -> t.name());
+        Change c = new Change(Instant.now(), thread, meta.locationString(we.location()), object, oldValue, newValue, read);
+        r.slots[(int) (r.total++ % capacity)] = c;
+        return c;
+    }
+
+    /** Primitives and null never leave the debugger; other values only when the thread is parked. */
+    static String render(Value v, Field f, boolean suspended) {
+        if (v == null) return "null";
+        if (v instanceof PrimitiveValue) return v.toString();
+        if (suspended) return VariableFormatter.format(v);
+        return f.typeName() + "@" + ((ObjectReference) v).uniqueID();
+    }
+
+    /**
+     * The last {@code last} events of the fields matching {@code name}, oldest first. {@code name} is
+     * "Class.field" (the class may be a pattern) or just "field".
+     */
+    public synchronized List<Change> changes(String name, int last) {
+        int dot = name.lastIndexOf('.');
+        String cls = dot > 0 ? name.substring(0, dot) : "*";
+        String field = name.substring(dot + 1);
+        List<Change> out = new ArrayList<>();
+        for (Ring r : rings.values()) {
+            int rdot = r.name.lastIndexOf('.');
+            if (!r.name.substring(rdot + 1).equals(field) || !BreakpointRegistry.matches(cls, r.name.substring(0, rdot))) {
+                continue;
+            }
+            long n = Math.min(r.total, capacity);
+            for (long i = r.total - n; i < r.total; i++) out.add(r.slots[(int) (i % capacity)]);
+        }
+        out.sort(Comparator.comparing(Change::at));
+        return out.subList(Math.max(0, out.size() - last), out.size());
+    }
+
+    public synchronized void printSummary(PrintStream out) {
+        if (rings.isEmpty()) out.println("[no watchpoint events yet]");
+        for (Ring r : rings.values()) {
+            out.printf("%s events=%d kept=%d%n", r.name, r.total, Math.min(r.total, capacity));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.debugger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * {@code --attach host:port,host:port} or {@code --attach @targets.txt}: the same breakpoints and
+ * logpoints on many JVMs at once. Each target gets its own {@link Debugger} and its own thread for
+ * connecting, installing the configuration and running the event loop, so a target that is slow to
+ * answer or gone delays only its own line in the report. Console lines are prefixed with the target
+ * and log records carry a {@code "target"} field in one merged {@link EventLog}. There is no REPL:
+ * stops are reported and resumed.
+ */
+public final class Fleet {
+    public record Target(String host, String port) {
+        static Target parse(String s) {
+            int colon = s.lastIndexOf(':');
+            if (colon <= 0 || colon == s.length() - 1) throw new IllegalArgumentException("Expected host:port, got: " + s);
+            return new Target(s.substring(0, colon), s.substring(colon + 1));
+        }
+
+        @Override public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    public static final class Options {
+        public long connectTimeoutMillis = 10_000;
+    }
+
+    /** One target; fields are written by the target's thread and read by the report. */
+    private static final class Member {
+        final Target target;
+        final Debugger dbg;
+        final CountDownLatch ready = new CountDownLatch(1);
+        volatile String status = "connecting";
+        volatile long connectMicros = -1, installMicros = -1;
+        volatile int requests;
+        Thread thread;
+
+        Member(Target target, Debugger dbg) {
+            this.target = target;
+            this.dbg = dbg;
+        }
+    }
+
+    private final List<Member> members = new ArrayList<>();
+    private final Options opts;
+    private final EventLog log; // may be null
+
+    public Fleet(List<Target> targets, EventLog log, Options opts) {
+        this.opts = opts;
+        this.log = log;
+        for (Target t : targets) {
+            Debugger dbg = new Debugger(log != null ? log.forTarget(t.toString()) : null);
+            dbg.setOutput(new PrintStream(new TaggedOutput("[" + t + "] "), true));
+            members.add(new Member(t, dbg));
+        }
+    }
+
+    /** "h1:5005,h2:5005" (commas or spaces), or "@file" with one target per line and # comments. */
+    public static List<Target> parseTargets(String arg) throws IOException {
+        List<String> items = new ArrayList<>();
+        if (arg.startsWith("@")) {
+            for (String line : Files.readAllLines(Path.of(arg.substring(1)))) {
+                int hash = line.indexOf('#');
+                items.addAll(Arrays.asList((hash >= 0 ? line.substring(0, hash) : line).trim().split("[,\\s]+")));
+            }
+        } else {
+            items.addAll(Arrays.asList(arg.trim().split("[,\\s]+")));
+        }
+        List<Target> targets = new ArrayList<>();
+        for (String s : items) {
+            if (!s.isEmpty()) targets.add(Target.parse(s));
+        }
+        if (targets.isEmpty()) throw new IllegalArgumentException("No targets in: " + arg);
+        return targets;
+    }
+
+    /**
+     * Connects to every target in parallel, applies {@code configure} to each as soon as it is
+     * connected, prints the connect / install report once all targets are ready or have failed (or
+     * the connect timeout has passed), and returns when every target has exited or disconnected.
+     */
+    public void run(Consumer<Debugger> configure) throws InterruptedException {
+        Thread hook = new Thread(this::dispose, "fleet-shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+        for (Member m : members) {
+            m.thread = new Thread(() -> serve(m, configure), "fleet-" + m.target);
+            m.thread.setDaemon(true);
+            m.thread.start();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(opts.connectTimeoutMillis * 2);
+        for (Member m : members) {
+            m.ready.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        report();
+        for (Member m : members) m.thread.join();
+        try { Runtime.getRuntime().removeShutdownHook(hook); } catch (IllegalStateException ignored) {}
+    }
+
+    private void serve(Member m, Consumer<Debugger> configure) {
+        try {
+            long t0 = System.nanoTime();
+            m.dbg.attach(m.target.host(), m.target.port(), opts.connectTimeoutMillis);
+            long t1 = System.nanoTime();
+            m.connectMicros = (t1 - t0) / 1_000;
+            configure.accept(m.dbg);
+            m.installMicros = (System.nanoTime() - t1) / 1_000;
+            m.requests = m.dbg.installedRequests();
+            m.status = "ok";
+            m.dbg.log("FleetTarget", Map.of("status", m.status, "connectMicros", m.connectMicros,
+                    "installMicros", m.installMicros, "requests", m.requests));
+            m.ready.countDown();
+            m.dbg.startEventLoop((reason, thread, location) -> {}); // reported by the loop, resumed on return
+            m.status = "exited";
+        } catch (Exception e) {
+            m.status = "failed: " + e.getMessage();
+            m.dbg.log("FleetTarget", Map.of("status", m.status));
+        } finally {
+            m.ready.countDown();
+            m.dbg.dispose();
+        }
+    }
+
+    private void report() {
+        int ok = 0;
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("[fleet] %-24s %10s %10s %8s  %s%n", "target", "connect", "install", "requests", "status"));
+        for (Member m : members) {
+            if (m.installMicros >= 0) ok++;
+            b.append(String.format("[fleet] %-24s %10s %10s %8s  %s%n", m.target, millis(m.connectMicros),
+                    millis(m.installMicros), m.installMicros >= 0 ? m.requests : "-", m.status));
+        }
+        b.append("[fleet] ").append(ok).append('/').append(members.size()).append(" target(s) configured");
+        System.out.println(b);
+    }
+
+    private static String millis(long micros) {
+        return micros < 0 ? "-" : String.format("%.1fms", micros / 1_000.0);
+    }
+
+    /** Ctrl-C: detach everywhere (removing our requests) and keep what the log already accepted. */
+    private void dispose() {
+        for (Member m : members) m.dbg.dispose();
+        if (log != null) log.close();
+    }
+
+    /** Prefixes each line with the target and writes whole lines, so targets never interleave mid-line. */
+    private static final class TaggedOutput extends OutputStream {
+        private final byte[] prefix;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+
+        TaggedOutput(String prefix) {
+            this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override public synchronized void write(int b) {
+            if (b == '\n') {
+                synchronized (System.out) {
+                    System.out.write(prefix, 0, prefix.length);
+                    System.out.write(line.toByteArray(), 0, line.size());
+                    System.out.println();
+                }
+                line.reset();
+            } else if (b != '\r') {
+                line.write(b);
+            }
+        }
+    }
+}
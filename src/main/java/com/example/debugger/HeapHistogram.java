@@ -0,0 +1,140 @@
+package com.example.debugger;
+
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.VirtualMachine;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Instance counts per loaded class from {@link VirtualMachine#instanceCounts}, asked in batches, with
+ * deltas against the previous snapshot so leaks show up as growth. Each type gets a stable index the
+ * first time it is seen; counts live in {@code long[]} arrays by that index, so a snapshot of tens of
+ * thousands of classes allocates two arrays and ranking is a top-N pass without boxing.
+ */
+public final class HeapHistogram {
+    public static final class Options {
+        public List<String> packages = List.of(); // class name patterns ("com.acme.*"); empty = all
+        public int top = 20;
+        public int batch = 2000;                  // types per instanceCounts call
+    }
+
+    private final VirtualMachine vm;
+    private final Options opts;
+    private final EventLog log; // may be null
+    private final Map<ReferenceType, Integer> index = new HashMap<>();
+    private final List<ReferenceType> types = new ArrayList<>();
+    private long[] counts = new long[0];
+    private BitSet measured = new BitSet();
+    private long takenNanos;
+
+    public HeapHistogram(VirtualMachine vm, Options opts, EventLog log) {
+        if (!vm.canGetInstanceInfo()) throw new IllegalStateException("Target VM cannot count instances");
+        this.vm = vm;
+        this.opts = opts;
+        this.log = log;
+    }
+
+    /**
+     * Takes a snapshot of the classes matching {@code patterns} (the configured packages when empty)
+     * and prints the top N by count, or by growth since the previous snapshot.
+     */
+    public synchronized void snapshot(List<String> patterns, int top, boolean byGrowth, PrintStream out) {
+        List<String> filter = patterns.isEmpty() ? opts.packages : patterns;
+        long t0 = System.nanoTime();
+        List<ReferenceType> live = new ArrayList<>();
+        for (ReferenceType t : vm.allClasses()) {
+            if (t.isPrepared() && accepts(filter, t.name())) live.add(t);
+        }
+        RoundTrips.add(1);
+        for (ReferenceType t : live) {
+            if (index.putIfAbsent(t, types.size()) == null) types.add(t);
+        }
+        long[] now = new long[types.size()];
+        BitSet seen = new BitSet(types.size());
+        int calls = 0;
+        for (int from = 0; from < live.size(); from += opts.batch) {
+            List<ReferenceType> batch = live.subList(from, Math.min(live.size(), from + opts.batch));
+            long[] c = vm.instanceCounts(batch);
+            calls++;
+            for (int i = 0; i < c.length; i++) {
+                int ix = index.get(batch.get(i));
+                now[ix] = c[i];
+                seen.set(ix);
+            }
+        }
+        RoundTrips.add(calls);
+        long[] before = counts;
+        BitSet beforeSeen = measured;
+        long sinceMillis = takenNanos == 0 ? -1 : (t0 - takenNanos) / 1_000_000;
+
+        // top N by count or growth: insertion into a small sorted array of indexes
+        int[] best = new int[Math.min(top, seen.cardinality())];
+        long[] keys = new long[best.length];
+        int filled = 0;
+        long instances = 0;
+        for (int ix = seen.nextSetBit(0); ix >= 0; ix = seen.nextSetBit(ix + 1)) {
+            instances += now[ix];
+            long key = byGrowth ? delta(now, before, beforeSeen, ix) : now[ix];
+            if (byGrowth && key <= 0) continue;
+            if (filled == best.length && (best.length == 0 || key <= keys[filled - 1])) continue;
+            int pos = filled < best.length ? filled++ : filled - 1;
+            while (pos > 0 && keys[pos - 1] < key) {
+                keys[pos] = keys[pos - 1];
+                best[pos] = best[pos - 1];
+                pos--;
+            }
+            keys[pos] = key;
+            best[pos] = ix;
+        }
+
+        counts = now;
+        measured = seen;
+        takenNanos = t0;
+        long micros = (System.nanoTime() - t0) / 1_000;
+        out.printf("%12s %12s  %s%n", "instances", "delta", "class");
+        for (int i = 0; i < filled; i++) {
+            int ix = best[i];
+            String name = types.get(ix).name();
+            boolean known = beforeSeen.get(ix) && ix < before.length;
+            long d = delta(now, before, beforeSeen, ix);
+            out.printf("%12d %12s  %s%n", now[ix], known ? String.format("%+d", d) : "new", name);
+            if (log != null) {
+                log.append("HeapHistogram", Map.of("class", name, "instances", now[ix], "delta", known ? d : now[ix]));
+            }
+        }
+        out.println("[heap] classes=" + seen.cardinality() + " instances=" + instances + " calls=" + calls
+                + " took=" + micros + "us" + (sinceMillis >= 0 ? " since previous=" + sinceMillis + "ms" : ""));
+    }
+
+    private static long delta(long[] now, long[] before, BitSet beforeSeen, int ix) {
+        return ix < before.length && beforeSeen.get(ix) ? now[ix] - before[ix] : now[ix];
+    }
+
+    private static boolean accepts(List<String> patterns, String className) {
+        if (patterns.isEmpty()) return true;
+        for (String p : patterns) {
+            if (BreakpointRegistry.matches(p, className)) return true;
+        }
+        return false;
+    }
+
+    /** Prints up to {@code n} live instances of {@code className} with their fields. */
+    public static void sample(VirtualMachine vm, MetadataCache meta, String className, int n, PrintStream out) {
+        List<ReferenceType> types = meta.classesByName(vm, className);
+        if (types.isEmpty()) {
+            out.println("[class not loaded: " + className + "]");
+            return;
+        }
+        for (ReferenceType t : types) {
+            List<ObjectReference> objs = t.instances(n); // one round-trip however many exist
+            RoundTrips.add(1);
+            out.println(t.name() + ": showing " + objs.size() + " instance(s)");
+            for (ObjectReference o : objs) {
+                out.println("  " + VariableFormatter.format(o));
+                for (String line : VariableFormatter.formatFields(o)) out.println("    " + line);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.debugger;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory latency histogram in nanoseconds: 16 linear sub-buckets per power of two, so any
+ * reported percentile is within ~6% of the true value. Values above ~18 minutes land in the last
+ * bucket (max stays exact). {@link #record} never allocates and is safe from any number of threads;
+ * readers see a consistent-enough view for reporting.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_EXP = 40; // 2^40 ns ~ 18 min
+    private static final int BUCKETS = (MAX_EXP - SUB_BITS + 2) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray totals = new AtomicLongArray(3); // count, sum, max
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(index(nanos));
+        totals.incrementAndGet(0);
+        totals.addAndGet(1, nanos);
+        long max;
+        while (nanos > (max = totals.get(2)) && !totals.compareAndSet(2, max, nanos)) {
+            // retry
+        }
+    }
+
+    static int index(long v) {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        if (exp > MAX_EXP) return BUCKETS - 1;
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+        return (exp - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /** Highest value that falls into bucket {@code i}. */
+    static long upperBound(int i) {
+        if (i < SUB) return i;
+        int exp = i / SUB + SUB_BITS - 1;
+        long lower = (long) (SUB + i % SUB) << (exp - SUB_BITS);
+        return lower + (1L << (exp - SUB_BITS)) - 1;
+    }
+
+    public long count() { return totals.get(0); }
+    public long sum() { return totals.get(1); }
+    public long max() { return totals.get(2); }
+
+    public long mean() {
+        long n = count();
+        return n == 0 ? 0 : sum() / n;
+    }
+
+    /** Value at percentile {@code p} (0-100), capped at the exact max. */
+    public long percentile(double p) {
+        long n = count();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), max());
+        }
+        return max();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        for (int i = 0; i < 3; i++) totals.set(i, 0);
+    }
+
+    /** "n=120 p50=35us p99=410us max=1203us" */
+    @Override public String toString() {
+        return "n=" + count() + " p50=" + percentile(50) / 1_000 + "us p99=" + percentile(99) / 1_000
+                + "us max=" + max() / 1_000 + "us";
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.debugger;
+
+import com.sun.jdi.*;
+import com.sun.jdi.event.BreakpointEvent;
+import com.sun.jdi.event.EventSet;
+import com.sun.jdi.request.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code --coverage com.acme.*}: which lines production traffic actually runs, without an agent.
+ * Every line of each matching class gets a non-suspending breakpoint with a count filter of one, so
+ * the target VM reports the first execution and then expires the request by itself; once code is
+ * warm no events flow at all. Hits set a bit per line in the class's source file and queue the
+ * spent request, which a background thread deletes in batches. The same thread installs classes in
+ * batches of {@code batch} requests, pausing between them so a class with thousands of lines never
+ * holds the JDWP connection for long, and writes an lcov tracefile every {@code exportMillis}.
+ * A thread that prepares a matching class stays suspended until the class is installed, so its
+ * first lines are seen too; classes already loaded at start are installed while they run.
+ */
+public final class LineCoverage {
+    static final String SITE = "coverageSite";  // BreakpointRequest property: the Site it covers
+    static final String PREPARE = "coverage";   // ClassPrepareRequest property
+
+    public static final class Options {
+        public List<String> includes = List.of();
+        public Path out = Path.of("coverage.info");
+        public long exportMillis = 10_000;
+        public int batch = 500;        // requests created or deleted per JDWP burst
+        public long pauseMillis = 2;   // between bursts
+    }
+
+    /** Lines of one source file; several classes (inner, anonymous) share one. Guarded by the tracker. */
+    private static final class SourceFile {
+        final String path;
+        final BitSet lines = new BitSet();
+        final BitSet hit = new BitSet();
+
+        SourceFile(String path) {
+            this.path = path;
+        }
+    }
+
+    private record Site(SourceFile file, int line) {}
+
+    /** A class to install and the event set to resume afterwards (null: nothing is held). */
+    private record Pending(ReferenceType type, EventSet held) {}
+
+    private final VirtualMachine vm;
+    private final EventRequestManager erm;
+    private final Options opts;
+    private final EventLog log; // may be null
+    private final PrintStream out;
+    private final Map<String, SourceFile> files = new TreeMap<>();
+    private final Object exportLock = new Object(); // one tracefile write at a time
+    private final Set<ReferenceType> installed = new HashSet<>(); // worker thread only
+    private final LinkedBlockingQueue<Pending> toInstall = new LinkedBlockingQueue<>();
+    private final ConcurrentLinkedQueue<EventRequest> spent = new ConcurrentLinkedQueue<>();
+    private volatile long created, deleted, hits, installNanos;
+    private Thread worker;
+
+    public LineCoverage(VirtualMachine vm, Options opts, EventLog log, PrintStream out) {
+        this.vm = vm;
+        this.erm = vm.eventRequestManager();
+        this.opts = opts;
+        this.log = log;
+        this.out = out;
+    }
+
+    /** Watches for matching classes and queues the ones already loaded. */
+    public void start() {
+        for (String include : opts.includes) {
+            ClassPrepareRequest r = erm.createClassPrepareRequest(); // one per pattern: filters are ANDed
+            r.addClassFilter(BreakpointRegistry.filterFor(include)); // widened; classesPrepared narrows it again
+            r.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD); // held until installed
+            r.putProperty(PREPARE, this);
+            r.enable();
+        }
+        for (ReferenceType t : vm.allClasses()) {
+            if (t.isPrepared() && matches(t.name())) toInstall.add(new Pending(t, null));
+        }
+        worker = new Thread(this::work, "coverage");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private boolean matches(String className) {
+        for (String p : opts.includes) {
+            if (BreakpointRegistry.matches(p, className)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Event pump: matching classes were prepared. If {@code held} is not null the tracker owns the
+     * event set and resumes it once the last of {@code types} is installed.
+     */
+    public void classesPrepared(List<ReferenceType> types, EventSet held) {
+        List<ReferenceType> matching = new ArrayList<>(types.size());
+        for (ReferenceType t : types) {
+            if (matches(t.name())) matching.add(t);
+        }
+        if (matching.isEmpty()) {
+            if (held != null) held.resume();
+            return;
+        }
+        for (int i = 0; i < matching.size(); i++) {
+            toInstall.add(new Pending(matching.get(i), i == matching.size() - 1 ? held : null));
+        }
+    }
+
+    /** Event pump: first execution of a line; nothing is suspended and the request has expired. */
+    public void hit(BreakpointEvent be) {
+        Site s = (Site) be.request().getProperty(SITE);
+        synchronized (this) {
+            s.file.hit.set(s.line);
+        }
+        hits++;
+        spent.add(be.request());
+    }
+
+    // -------------------- Worker --------------------
+
+    private void work() {
+        long nextExport = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(opts.exportMillis);
+        try {
+            while (true) {
+                Pending p = toInstall.poll(100, TimeUnit.MILLISECONDS);
+                if (p != null) {
+                    try {
+                        install(p.type);
+                    } finally {
+                        if (p.held != null) p.held.resume();
+                    }
+                }
+                deleteSpent();
+                if (System.nanoTime() >= nextExport) {
+                    export();
+                    nextExport = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(opts.exportMillis);
+                }
+            }
+        } catch (InterruptedException | VMDisconnectedException e) {
+            // stopped, or the target is gone
+        }
+    }
+
+    private void install(ReferenceType t) throws InterruptedException {
+        if (!installed.add(t)) return;
+        long t0 = System.nanoTime();
+        List<Location> locations;
+        try {
+            locations = t.allLineLocations();
+        } catch (AbsentInformationException | ObjectCollectedException e) {
+            return; // no line table (or unloaded meanwhile): nothing to cover
+        }
+        SourceFile file;
+        synchronized (this) {
+            file = files.computeIfAbsent(sourcePath(t), SourceFile::new);
+        }
+        BitSet seen = new BitSet();
+        int burst = 0;
+        for (Location loc : locations) {
+            int line = loc.lineNumber();
+            if (line <= 0 || seen.get(line)) continue; // the first location of a line is enough
+            seen.set(line);
+            synchronized (this) {
+                file.lines.set(line);
+                if (file.hit.get(line)) continue; // covered through another class loader already
+            }
+            BreakpointRequest r = erm.createBreakpointRequest(loc);
+            r.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+            r.addCountFilter(1); // the target expires it after the first hit
+            r.putProperty(SITE, new Site(file, line));
+            r.enable();
+            created++;
+            if (++burst == opts.batch) {
+                burst = 0;
+                deleteSpent();
+                Thread.sleep(opts.pauseMillis); // let the REPL and the pump at the connection
+            }
+        }
+        installNanos += System.nanoTime() - t0;
+    }
+
+    private static String sourcePath(ReferenceType t) {
+        try {
+            return t.sourcePaths(null).get(0); // "com/acme/Foo.java"
+        } catch (AbsentInformationException | IndexOutOfBoundsException e) {
+            String name = t.name();
+            int dollar = name.indexOf('$');
+            return (dollar > 0 ? name.substring(0, dollar) : name).replace('.', '/') + ".java";
+        }
+    }
+
+    private void deleteSpent() {
+        List<EventRequest> batch = new ArrayList<>();
+        for (EventRequest r; batch.size() < opts.batch && (r = spent.poll()) != null; ) batch.add(r);
+        if (batch.isEmpty()) return;
+        erm.deleteEventRequests(batch);
+        deleted += batch.size();
+    }
+
+    // -------------------- Reporting --------------------
+
+    /** Writes the lcov tracefile (replacing the previous one) and logs a Coverage record. */
+    public void export() {
+        List<SourceFile> copy = new ArrayList<>();
+        synchronized (this) { // only long enough to copy: the pump takes this lock for every hit
+            for (SourceFile f : files.values()) {
+                SourceFile c = new SourceFile(f.path);
+                c.lines.or(f.lines);
+                c.hit.or(f.hit);
+                copy.add(c);
+            }
+        }
+        synchronized (exportLock) {
+            write(copy);
+        }
+    }
+
+    private void write(List<SourceFile> files) {
+        int lines = 0, hit = 0;
+        Path tmp = opts.out.resolveSibling(opts.out.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp)) {
+            w.write("TN:\n");
+            for (SourceFile f : files) {
+                w.write("SF:" + f.path + "\n");
+                for (int l = f.lines.nextSetBit(0); l >= 0; l = f.lines.nextSetBit(l + 1)) {
+                    w.write("DA:" + l + "," + (f.hit.get(l) ? 1 : 0) + "\n");
+                }
+                int lf = f.lines.cardinality(), lh = f.hit.cardinality();
+                w.write("LF:" + lf + "\nLH:" + lh + "\nend_of_record\n");
+                lines += lf;
+                hit += lh;
+            }
+        } catch (IOException e) {
+            out.println("[warn] coverage export failed: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tmp, opts.out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            out.println("[warn] coverage export failed: " + e.getMessage());
+            return;
+        }
+        if (log != null) {
+            log.append("Coverage", Map.of("files", files.size(), "lines", lines, "hit", hit,
+                    "requestsCreated", created, "requestsDeleted", deleted, "installMicros", installNanos / 1_000));
+        }
+    }
+
+    /** The files whose path contains {@code filter} (none if it is null), then the totals. */
+    public synchronized void print(PrintStream out, String filter) {
+        int lines = 0, hit = 0;
+        for (SourceFile f : files.values()) {
+            int lf = f.lines.cardinality(), lh = f.hit.cardinality();
+            lines += lf;
+            hit += lh;
+            if (filter != null && f.path.contains(filter)) {
+                out.printf("%5.1f%% %5d/%-5d %s%n", lf == 0 ? 0 : 100.0 * lh / lf, lh, lf, f.path);
+            }
+        }
+        out.printf("[coverage] files=%d lines=%d hit=%d (%.1f%%) requests created=%d expired=%d deleted=%d pending classes=%d install=%dms -> %s%n",
+                files.size(), lines, hit, lines == 0 ? 0 : 100.0 * hit / lines, created, hits, deleted,
+                toInstall.size(), installNanos / 1_000_000, opts.out);
+    }
+
+    /** Stops the worker and writes the final tracefile; the requests go with the VM connection. */
+    public void stop() {
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(2_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        export();
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.debugger;
+
+import com.sun.jdi.*;
+
+import java.util.*;
+
+/**
+ * A logpoint message such as {@code "n={n} counter={this.counter}"}, parsed once at install time.
+ * Rendering fetches all referenced locals with one {@code StackFrame.getValues} call and all
+ * referenced fields with one {@code ObjectReference.getValues} call.
+ */
+public final class LogTemplate {
+    private final String source;
+    private final List<String> literals = new ArrayList<>(); // size == exprs.size() + 1
+    private final List<String> exprs = new ArrayList<>();
+    private final Set<String> localNames = new LinkedHashSet<>();
+    private final Set<String> fieldNames = new LinkedHashSet<>();
+
+    private LogTemplate(String source) {
+        this.source = source;
+    }
+
+    public static LogTemplate compile(String template) {
+        Objects.requireNonNull(template, "template");
+        LogTemplate t = new LogTemplate(template);
+        StringBuilder lit = new StringBuilder();
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            int close = c == '{' ? template.indexOf('}', i + 1) : -1;
+            if (close < 0) {
+                lit.append(c);
+                i++;
+                continue;
+            }
+            String expr = template.substring(i + 1, close).trim();
+            if (expr.isEmpty()) throw new IllegalArgumentException("Empty {} in log template: " + template);
+            t.literals.add(lit.toString());
+            lit.setLength(0);
+            t.exprs.add(expr);
+            if (expr.startsWith("this.")) t.fieldNames.add(expr.substring("this.".length()));
+            else t.localNames.add(expr);
+            i = close + 1;
+        }
+        t.literals.add(lit.toString());
+        return t;
+    }
+
+    /** Renders against a frame of a suspended thread; unresolvable names render as {@code <name?>}. */
+    public String render(StackFrame f, MetadataCache meta) {
+        Map<String, Value> values = new HashMap<>();
+        if (!localNames.isEmpty()) {
+            try {
+                List<LocalVariable> vars = new ArrayList<>(localNames.size());
+                for (String n : localNames) {
+                    LocalVariable v = meta.visibleVariableByName(f, n);
+                    if (v != null) vars.add(v);
+                }
+                if (!vars.isEmpty()) {
+                    long t0 = System.nanoTime();
+                    Map<LocalVariable, Value> got = f.getValues(vars);
+                    RoundTrips.timed(RoundTrips.Call.getValues, t0);
+                    got.forEach((v, val) -> values.put(v.name(), val));
+                }
+            } catch (AbsentInformationException ignored) {
+                // compiled without -g:vars; names render as unavailable
+            }
+        }
+        if (!fieldNames.isEmpty()) {
+            ObjectReference thiz = f.thisObject();
+            RoundTrips.add(1);
+            ReferenceType type = thiz != null ? thiz.referenceType() : f.location().declaringType();
+            List<Field> fields = new ArrayList<>(fieldNames.size());
+            for (String n : fieldNames) {
+                Field fld = meta.fieldByName(type, n);
+                if (fld != null && (thiz != null || fld.isStatic())) fields.add(fld);
+            }
+            if (!fields.isEmpty()) {
+                long t0 = System.nanoTime();
+                Map<Field, Value> got = thiz != null ? thiz.getValues(fields) : type.getValues(fields);
+                RoundTrips.timed(RoundTrips.Call.getValues, t0);
+                got.forEach((fld, val) -> values.put("this." + fld.name(), val));
+            }
+        }
+
+        StringBuilder b = new StringBuilder(source.length() + 16 * exprs.size());
+        for (int i = 0; i < exprs.size(); i++) {
+            b.append(literals.get(i));
+            String e = exprs.get(i);
+            if (values.containsKey(e)) b.append(VariableFormatter.format(values.get(e)));
+            else b.append('<').append(e).append("?>");
+        }
+        b.append(literals.get(exprs.size()));
+        return b.toString();
+    }
+
+    @Override public String toString() {
+        return source;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.debugger;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing {@code long -> int} hash map without boxing, for hot aggregation paths that run
+ * for hours. {@link Long#MIN_VALUE} is reserved as the empty-slot marker and cannot be used as a key.
+ */
+public final class LongIntMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public LongIntMap(int expected) {
+        int cap = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new long[cap];
+        values = new int[cap];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /** The value for {@code key}, or {@code missing} if absent. */
+    public int get(long key, int missing) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) return values[i];
+            if (k == EMPTY) return missing;
+        }
+    }
+
+    public void put(long key, int value) {
+        if (key == EMPTY) throw new IllegalArgumentException("Reserved key");
+        if ((size + 1) * 2 > keys.length) grow();
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) { values[i] = value; return; }
+            if (k == EMPTY) {
+                keys[i] = key;
+                values[i] = value;
+                size++;
+                return;
+            }
+        }
+    }
+
+    public int size() { return size; }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.debugger;
+
+import com.sun.jdi.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Per-{@link ReferenceType} cache of the metadata the debugger looks up on every event and command:
+ * line tables, fields, methods, local variable tables, source names and formatted location strings.
+ * A type's metadata never changes while it is loaded (the debugger does not redefine classes), so
+ * entries live until the type is unloaded ({@link #invalidate(String)} from a ClassUnloadEvent).
+ * {@link #classesByName} caches only non-empty results and must be invalidated when a class of that
+ * name is prepared. It only learns of prepares that some enabled ClassPrepareRequest reports, so a
+ * second class loader's copy of a cached name stays invisible until such an event or {@link #clear}
+ * (the {@code cache clear} command).
+ */
+public final class MetadataCache {
+    private static final class TypeInfo {
+        final Map<Integer, List<Location>> lines = new ConcurrentHashMap<>();
+        final Map<String, Optional<Field>> fields = new ConcurrentHashMap<>();
+        final Map<String, List<Method>> methods = new ConcurrentHashMap<>();
+        final Map<Method, List<LocalVariable>> variables = new ConcurrentHashMap<>();
+        final Map<Location, String> locations = new ConcurrentHashMap<>();
+        volatile String sourceName;
+        volatile List<Field> instanceFields;
+    }
+
+    private final Map<ReferenceType, TypeInfo> types = new ConcurrentHashMap<>();
+    private final Map<String, List<ReferenceType>> byName = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private TypeInfo info(ReferenceType t) {
+        return types.computeIfAbsent(t, k -> new TypeInfo());
+    }
+
+    private <K, V> V lookup(Map<K, V> map, K key, Function<K, V> load) {
+        V v = map.get(key);
+        if (v != null) {
+            hits.increment();
+            return v;
+        }
+        misses.increment();
+        v = load.apply(key);
+        map.put(key, v);
+        return v;
+    }
+
+    /**
+     * As {@link VirtualMachine#classesByName}. A hit may miss types of that name loaded since, by
+     * another class loader, if no ClassPrepareRequest covered them; {@link #clear} drops it.
+     */
+    public List<ReferenceType> classesByName(VirtualMachine vm, String name) {
+        List<ReferenceType> cached = byName.get(name);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        long t0 = System.nanoTime();
+        List<ReferenceType> found = vm.classesByName(name);
+        RoundTrips.timed(RoundTrips.Call.classesByName, t0);
+        if (!found.isEmpty()) byName.put(name, List.copyOf(found)); // a miss may be loaded any moment
+        return found;
+    }
+
+    public List<Location> locationsOfLine(ReferenceType t, int line) throws AbsentInformationException {
+        TypeInfo ti = info(t);
+        List<Location> cached = ti.lines.get(line);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        List<Location> locs = List.copyOf(t.locationsOfLine(line));
+        ti.lines.put(line, locs);
+        return locs;
+    }
+
+    /** Overloads named {@code name}; all of them when {@code signature} is null. */
+    public List<Method> methodsByName(ReferenceType t, String name, String signature) {
+        String key = signature == null ? name : name + signature;
+        return lookup(info(t).methods, key, k -> List.copyOf(signature == null
+                ? t.methodsByName(name)
+                : t.methodsByName(name, signature)));
+    }
+
+    public Field fieldByName(ReferenceType t, String name) {
+        return lookup(info(t).fields, name, k -> Optional.ofNullable(t.fieldByName(k))).orElse(null);
+    }
+
+    /** Non-static fields of {@code t} including inherited ones, in declaration order. */
+    public List<Field> instanceFields(ReferenceType t) {
+        TypeInfo ti = info(t);
+        List<Field> cached = ti.instanceFields;
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        List<Field> fields = new ArrayList<>();
+        for (Field f : t.allFields()) {
+            if (!f.isStatic()) fields.add(f);
+        }
+        ti.instanceFields = List.copyOf(fields);
+        return ti.instanceFields;
+    }
+
+    /** All local variables of {@code m}, visible or not; throws for classes compiled without -g:vars. */
+    public List<LocalVariable> variables(Method m) throws AbsentInformationException {
+        TypeInfo ti = info(m.declaringType());
+        List<LocalVariable> cached = ti.variables.get(m);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        List<LocalVariable> vars = List.copyOf(m.variables());
+        ti.variables.put(m, vars);
+        return vars;
+    }
+
+    /** Same result as {@link StackFrame#visibleVariables()}, filtered locally from the cached table. */
+    public List<LocalVariable> visibleVariables(StackFrame f) throws AbsentInformationException {
+        Map<String, LocalVariable> visible = new LinkedHashMap<>();
+        for (LocalVariable v : variables(f.location().method())) {
+            if (v.isVisible(f)) visible.put(v.name(), v); // inner scopes shadow outer ones
+        }
+        return new ArrayList<>(visible.values());
+    }
+
+    public LocalVariable visibleVariableByName(StackFrame f, String name) throws AbsentInformationException {
+        LocalVariable found = null;
+        for (LocalVariable v : variables(f.location().method())) {
+            if (v.name().equals(name) && v.isVisible(f)) found = v;
+        }
+        return found;
+    }
+
+    public String sourceName(ReferenceType t) {
+        TypeInfo ti = info(t);
+        String s = ti.sourceName;
+        if (s != null) {
+            hits.increment();
+            return s;
+        }
+        misses.increment();
+        try { s = t.sourceName(); } catch (AbsentInformationException e) { s = "UnknownSource"; }
+        ti.sourceName = s;
+        return s;
+    }
+
+    /** "pkg.Class.method(Source.java:42)" */
+    public String locationString(Location loc) {
+        ReferenceType t = loc.declaringType();
+        return lookup(info(t).locations, loc,
+                l -> t.name() + "." + l.method().name() + "(" + sourceName(t) + ":" + l.lineNumber() + ")");
+    }
+
+    /** A newly prepared class may be a second type of an already cached name (another class loader). */
+    public void classPrepared(ReferenceType t) {
+        byName.remove(t.name());
+    }
+
+    /** For ClassUnloadEvent, which only carries the class name. */
+    public void invalidate(String className) {
+        types.keySet().removeIf(t -> t.name().equals(className));
+        byName.remove(className);
+    }
+
+    public void clear() {
+        types.clear();
+        byName.clear();
+    }
+
+    public long hits() { return hits.sum(); }
+    public long misses() { return misses.sum(); }
+    public int typeCount() { return types.size(); }
+
+    @Override public String toString() {
+        long h = hits(), m = misses();
+        return String.format("types=%d hits=%d misses=%d hitRate=%.1f%%",
+                typeCount(), h, m, h + m == 0 ? 0.0 : 100.0 * h / (h + m));
+    }
+}
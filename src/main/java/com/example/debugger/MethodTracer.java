@@ -0,0 +1,142 @@
+package com.example.debugger;
+
+import com.sun.jdi.Method;
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.event.*;
+import com.sun.jdi.request.*;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * {@code --trace-methods}: call counts and latency per method from non-suspending
+ * MethodEntry/MethodExit requests. Entry and exit are matched on a per-thread call stack (threads
+ * found through a {@link LongIntMap} on their unique id) and durations go into one
+ * {@link LatencyHistogram} per method, so memory is fixed per traced method.
+ * <p>
+ * Nothing is suspended, so timestamps are taken when the debugger receives each event; durations
+ * include event delivery jitter and are meaningful from tens of microseconds up.
+ */
+public final class MethodTracer {
+    public static final List<String> DEFAULT_EXCLUDES = List.of("java.*", "javax.*", "jdk.*", "sun.*", "com.sun.*");
+    static final String TRACER = "tracer"; // EventRequest property marking the tracer's requests
+    private static final int MAX_DEPTH = 1024;
+
+    private static final class CallStack {
+        int[] methods = new int[16];
+        long[] started = new long[16];
+        int depth;
+    }
+
+    private final List<EventRequest> requests = new ArrayList<>();
+    private final Map<Method, Integer> methodIds = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<LatencyHistogram> histograms = new ArrayList<>();
+    private final LongIntMap threadIndex = new LongIntMap(64);
+    private final List<CallStack> stacks = new ArrayList<>();
+    private long unmatched;
+
+    /** One entry/exit request pair per include pattern: JDI ANDs class filters on one request. */
+    public MethodTracer(EventRequestManager erm, List<String> includes, List<String> excludes) {
+        for (String include : includes) {
+            MethodEntryRequest entry = erm.createMethodEntryRequest();
+            MethodExitRequest exit = erm.createMethodExitRequest();
+            entry.addClassFilter(include);
+            exit.addClassFilter(include);
+            for (String ex : excludes) {
+                entry.addClassExclusionFilter(ex);
+                exit.addClassExclusionFilter(ex);
+            }
+            requests.add(entry);
+            requests.add(exit);
+        }
+        ThreadDeathRequest death = erm.createThreadDeathRequest();
+        requests.add(death);
+        for (EventRequest r : requests) {
+            r.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+            r.putProperty(TRACER, this);
+            r.enable();
+        }
+    }
+
+    /** Called on the event pump for every event carrying the {@link #TRACER} property. */
+    public synchronized void handle(Event ev, long received) {
+        if (ev instanceof MethodEntryEvent me) {
+            CallStack s = stack(me.thread());
+            if (s.depth == MAX_DEPTH) return; // runaway recursion: exits pop nothing until it unwinds
+            if (s.depth == s.methods.length) {
+                s.methods = Arrays.copyOf(s.methods, s.depth * 2);
+                s.started = Arrays.copyOf(s.started, s.depth * 2);
+            }
+            s.methods[s.depth] = intern(me.method());
+            s.started[s.depth++] = received;
+        } else if (ev instanceof MethodExitEvent mx) {
+            CallStack s = stack(mx.thread());
+            int m = intern(mx.method());
+            for (int d = s.depth - 1; d >= 0; d--) {
+                if (s.methods[d] == m) {
+                    histograms.get(m).record(received - s.started[d]);
+                    unmatched += s.depth - 1 - d; // entries whose exit never arrived
+                    s.depth = d;
+                    return;
+                }
+            }
+            unmatched++;
+        } else if (ev instanceof ThreadDeathEvent td) {
+            int i = threadIndex.get(td.thread().uniqueID(), -1);
+            if (i >= 0) stacks.get(i).depth = 0;
+        }
+    }
+
+    private CallStack stack(ThreadReference t) {
+        int i = threadIndex.get(t.uniqueID(), -1);
+        if (i < 0) {
+            i = stacks.size();
+            stacks.add(new CallStack());
+            threadIndex.put(t.uniqueID(), i);
+        }
+        return stacks.get(i);
+    }
+
+    private int intern(Method m) {
+        Integer id = methodIds.get(m);
+        if (id != null) return id;
+        int next = names.size();
+        methodIds.put(m, next);
+        names.add(m.declaringType().name() + "." + m.name() + m.signature());
+        histograms.add(new LatencyHistogram());
+        return next;
+    }
+
+    /** Method ids ordered by total time spent, highest first. */
+    private synchronized List<Integer> ranked() {
+        List<Integer> ids = new ArrayList<>(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            if (histograms.get(i).count() > 0) ids.add(i);
+        }
+        ids.sort((a, b) -> Long.compare(histograms.get(b).sum(), histograms.get(a).sum()));
+        return ids;
+    }
+
+    public synchronized void print(PrintStream out, int top) {
+        List<Integer> ids = ranked();
+        out.printf("%10s %10s %10s %10s %10s  %s%n", "calls", "p50(us)", "p99(us)", "max(us)", "total(ms)", "method");
+        for (int i = 0; i < Math.min(top, ids.size()); i++) {
+            LatencyHistogram h = histograms.get(ids.get(i));
+            out.printf("%10d %10d %10d %10d %10d  %s%n", h.count(), h.percentile(50) / 1_000,
+                    h.percentile(99) / 1_000, h.max() / 1_000, h.sum() / 1_000_000, names.get(ids.get(i)));
+        }
+        out.println("[trace] methods=" + ids.size() + " unmatched=" + unmatched);
+    }
+
+    /** One MethodStats record per method (top N by total time), cumulative since start. */
+    public synchronized void dump(EventLog log, int top) {
+        List<Integer> ids = ranked();
+        for (int i = 0; i < Math.min(top, ids.size()); i++) {
+            LatencyHistogram h = histograms.get(ids.get(i));
+            log.append("MethodStats", Map.of("method", names.get(ids.get(i)), "calls", h.count(),
+                    "p50Micros", h.percentile(50) / 1_000, "p99Micros", h.percentile(99) / 1_000,
+                    "maxMicros", h.max() / 1_000, "totalMicros", h.sum() / 1_000));
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.debugger;
+
+import com.sun.jdi.*;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Streams a bounded JSON snapshot of an object graph. Expansion stops at {@code maxDepth}, and once
+ * {@code maxNodes} objects have been expanded or {@code maxBytes} characters written every further
+ * object is emitted as a stub, so the cost of a snapshot is predictable however large the graph.
+ * A string longer than the bytes left is cut, and a map's table is read in chunks only until
+ * {@code maxElements} entries are found. A ConcurrentHashMap caught mid-resize is marked
+ * {@code "$truncated":"resizing"}: the bins already moved to the new table are not walked.
+ * Objects already emitted (by {@code uniqueID}) become {@code {"$ref":id}}, which also breaks cycles.
+ * Boxed primitives and the common {@code java.util} collections are rendered from their internal
+ * fields, never with {@code invokeMethod}, so the target's threads are left alone.
+ */
+public final class ObjectSnapshot {
+    public static final class Budget {
+        public int maxDepth = 3;
+        public int maxNodes = 500;
+        public long maxBytes = 64 * 1024;
+        public int maxElements = 20; // per array / collection
+
+        public Budget withDepth(int depth) {
+            Budget b = new Budget();
+            b.maxDepth = depth;
+            b.maxNodes = maxNodes;
+            b.maxBytes = maxBytes;
+            b.maxElements = maxElements;
+            return b;
+        }
+    }
+
+    private static final Set<String> BOXES = Set.of(
+            "java.lang.Integer", "java.lang.Long", "java.lang.Short", "java.lang.Byte",
+            "java.lang.Character", "java.lang.Boolean", "java.lang.Float", "java.lang.Double",
+            "java.util.concurrent.atomic.AtomicInteger", "java.util.concurrent.atomic.AtomicLong",
+            "java.util.concurrent.atomic.AtomicBoolean");
+    private static final Set<String> LISTS = Set.of("java.util.ArrayList", "java.util.Vector");
+    private static final Set<String> MAPS = Set.of(
+            "java.util.HashMap", "java.util.LinkedHashMap", "java.util.concurrent.ConcurrentHashMap");
+    private static final int BUCKET_CHUNK = 256; // map table slots fetched per round-trip
+    private static final Set<String> CHM_BINS = Set.of("java.util.concurrent.ConcurrentHashMap$TreeBin",
+            "java.util.concurrent.ConcurrentHashMap$ForwardingNode", "java.util.concurrent.ConcurrentHashMap$ReservationNode");
+    private static final Set<String> SETS = Set.of("java.util.HashSet", "java.util.LinkedHashSet");
+
+    private final Budget budget;
+    private final MetadataCache meta;
+    private final Appendable out;
+    private final Set<Long> seen = new HashSet<>();
+    private int nodes;
+    private long bytes;
+
+    private ObjectSnapshot(Budget budget, MetadataCache meta, Appendable out) {
+        this.budget = budget;
+        this.meta = meta;
+        this.out = out;
+    }
+
+    /**
+     * @param root a JDI {@link Value}, or an already unwrapped value as returned by
+     *             {@link Expression#evaluate} (Boolean, Long, Double, Character, String, null)
+     */
+    public static void write(Object root, Budget budget, MetadataCache meta, Appendable out) throws IOException {
+        ObjectSnapshot s = new ObjectSnapshot(budget, meta, out);
+        s.any(root, 0);
+    }
+
+    private void emit(String s) throws IOException {
+        out.append(s);
+        bytes += s.length();
+    }
+
+    private boolean exhausted() {
+        return nodes >= budget.maxNodes || bytes >= budget.maxBytes;
+    }
+
+    private void any(Object v, int depth) throws IOException {
+        if (v instanceof Value jdi) {
+            value(jdi, depth);
+        } else if (v == null || v instanceof Number || v instanceof Boolean) {
+            emit(String.valueOf(v));
+        } else {
+            string(v.toString());
+        }
+    }
+
+    private void value(Value v, int depth) throws IOException {
+        if (v == null) { emit("null"); return; }
+        if (v instanceof CharValue c) { emit("\"" + EventLog.escape(String.valueOf(c.value())) + "\""); return; }
+        if (v instanceof PrimitiveValue) { emit(v.toString()); return; }
+        if (v instanceof StringReference s) {
+            RoundTrips.add(1);
+            string(s.value());
+            return;
+        }
+        ObjectReference o = (ObjectReference) v;
+        String type = o.referenceType().name();
+        if (BOXES.contains(type)) {
+            Field f = meta.fieldByName(o.referenceType(), "value");
+            if (f != null) {
+                RoundTrips.add(1);
+                value(o.getValue(f), depth);
+                return;
+            }
+        }
+        long id = o.uniqueID();
+        if (seen.contains(id)) { emit("{\"$ref\":" + id + "}"); return; }
+        String head = "{\"$type\":\"" + EventLog.escape(type) + "\",\"$id\":" + id;
+        if (depth >= budget.maxDepth || exhausted()) {
+            emit(head + ",\"$truncated\":" + (depth >= budget.maxDepth ? "\"depth\"" : "\"budget\"") + "}");
+            return;
+        }
+        seen.add(id); // only expanded objects: a stub seen first must not hide a later full rendering
+        nodes++;
+        emit(head);
+        if (o instanceof ArrayReference a) {
+            array(a, depth);
+        } else if (LISTS.contains(type)) {
+            list(o, depth);
+        } else if (MAPS.contains(type)) {
+            map(o, depth, false);
+        } else if (SETS.contains(type)) {
+            Field m = meta.fieldByName(o.referenceType(), "map");
+            Value backing = m != null ? o.getValue(m) : null;
+            RoundTrips.add(1);
+            if (backing instanceof ObjectReference bm) map(bm, depth, true);
+            else fields(o, depth);
+        } else if (type.equals("java.util.LinkedList")) {
+            linkedList(o, depth);
+        } else {
+            fields(o, depth);
+        }
+        emit("}");
+    }
+
+    /** A string cut to what is left of {@code maxBytes}; a cut one says how long it was. */
+    private void string(String str) throws IOException {
+        long left = Math.max(0, budget.maxBytes - bytes - 2);
+        if (str.length() <= left && EventLog.escape(str).length() <= left) {
+            emit("\"" + EventLog.escape(str) + "\"");
+            return;
+        }
+        String prefix = str.substring(0, (int) Math.min(str.length(), left));
+        String escaped = EventLog.escape(prefix);
+        while (escaped.length() > left && !prefix.isEmpty()) { // escapes made it longer
+            prefix = prefix.substring(0, prefix.length() / 2);
+            escaped = EventLog.escape(prefix);
+        }
+        emit("{\"$type\":\"java.lang.String\",\"length\":" + str.length() + ",\"prefix\":\"" + escaped
+                + "\",\"$truncated\":\"budget\"}");
+    }
+
+    private void fields(ObjectReference o, int depth) throws IOException {
+        List<Field> fields = meta.instanceFields(o.referenceType());
+        if (fields.isEmpty()) return;
+        Map<Field, Value> values = o.getValues(fields); // whole object in one round-trip
+        RoundTrips.add(1);
+        for (Field f : fields) {
+            emit(",\"" + EventLog.escape(f.name()) + "\":");
+            value(values.get(f), depth + 1);
+        }
+    }
+
+    private void array(ArrayReference a, int depth) throws IOException {
+        int len = a.length();
+        int n = Math.min(len, budget.maxElements);
+        emit(",\"length\":" + len + ",\"elements\":[");
+        elements(n > 0 ? a.getValues(0, n) : List.of(), depth);
+        RoundTrips.add(n > 0 ? 2 : 1);
+        emit("]");
+        if (len > n) emit(",\"$more\":" + (len - n));
+    }
+
+    private void elements(List<? extends Value> values, int depth) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) emit(",");
+            value(values.get(i), depth + 1);
+        }
+    }
+
+    /** ArrayList / Vector: the first {@code size} slots of {@code elementData}. */
+    private void list(ObjectReference o, int depth) throws IOException {
+        ReferenceType t = o.referenceType();
+        Field data = meta.fieldByName(t, "elementData");
+        Field sizeField = meta.fieldByName(t, t.name().equals("java.util.Vector") ? "elementCount" : "size");
+        if (data == null || sizeField == null) { fields(o, depth); return; }
+        Map<Field, Value> v = o.getValues(List.of(data, sizeField));
+        RoundTrips.add(1);
+        int size = ((IntegerValue) v.get(sizeField)).value();
+        ArrayReference arr = (ArrayReference) v.get(data);
+        int n = Math.min(size, budget.maxElements);
+        emit(",\"size\":" + size + ",\"elements\":[");
+        if (n > 0 && arr != null) {
+            elements(arr.getValues(0, n), depth);
+            RoundTrips.add(1);
+        }
+        emit("]");
+        if (size > n) emit(",\"$more\":" + (size - n));
+    }
+
+    /** LinkedList: walk {@code first}/{@code next}, reading {@code item}. */
+    private void linkedList(ObjectReference o, int depth) throws IOException {
+        ReferenceType t = o.referenceType();
+        Field first = meta.fieldByName(t, "first");
+        Field sizeField = meta.fieldByName(t, "size");
+        if (first == null || sizeField == null) { fields(o, depth); return; }
+        Map<Field, Value> v = o.getValues(List.of(first, sizeField));
+        RoundTrips.add(1);
+        int size = ((IntegerValue) v.get(sizeField)).value();
+        emit(",\"size\":" + size + ",\"elements\":[");
+        ObjectReference node = (ObjectReference) v.get(first);
+        int n = 0;
+        while (node != null && n < budget.maxElements && !exhausted()) {
+            Field item = meta.fieldByName(node.referenceType(), "item");
+            Field next = meta.fieldByName(node.referenceType(), "next");
+            Map<Field, Value> nv = node.getValues(List.of(item, next));
+            RoundTrips.add(1);
+            if (n++ > 0) emit(",");
+            value(nv.get(item), depth + 1);
+            node = (ObjectReference) nv.get(next);
+        }
+        emit("]");
+        if (size > n) emit(",\"$more\":" + (size - n));
+    }
+
+    /** HashMap / LinkedHashMap / ConcurrentHashMap: walk {@code table} buckets and their chains. */
+    private void map(ObjectReference o, int depth, boolean keysOnly) throws IOException {
+        ReferenceType t = o.referenceType();
+        Field table = meta.fieldByName(t, "table");
+        if (table == null) { fields(o, depth); return; }
+        Field sizeField = meta.fieldByName(t, "size"); // absent on ConcurrentHashMap (baseCount)
+        Map<Field, Value> v = o.getValues(sizeField != null ? List.of(table, sizeField) : List.of(table));
+        RoundTrips.add(1);
+        int size = sizeField != null ? ((IntegerValue) v.get(sizeField)).value() : -1;
+        if (size >= 0) emit(",\"size\":" + size);
+        emit(keysOnly ? ",\"elements\":[" : ",\"entries\":[");
+        ArrayReference buckets = (ArrayReference) v.get(table);
+        int n = 0, forwarded = 0;
+        int length = buckets != null ? buckets.length() : 0;
+        for (int from = 0; from < length && n < budget.maxElements && !exhausted(); from += BUCKET_CHUNK) {
+            // the table in chunks: a huge map costs as many buckets as it takes to find maxElements entries
+            List<Value> heads = buckets.getValues(from, Math.min(BUCKET_CHUNK, length - from));
+            RoundTrips.add(1);
+            for (Value head : heads) {
+                ObjectReference node = (ObjectReference) head;
+                while (node != null && n < budget.maxElements && !exhausted()) {
+                    ReferenceType nt = node.referenceType();
+                    if (CHM_BINS.contains(nt.name())) {
+                        // ConcurrentHashMap bins with no key of their own: a TreeBin's entries hang off
+                        // first (linked by next); a ForwardingNode's moved to nextTable mid-resize, and a
+                        // ReservationNode's entry is still being computed
+                        if (nt.name().endsWith("$TreeBin")) {
+                            node = (ObjectReference) node.getValue(meta.fieldByName(nt, "first"));
+                            RoundTrips.add(1);
+                        } else {
+                            if (nt.name().endsWith("$ForwardingNode")) forwarded++;
+                            node = null;
+                        }
+                        continue;
+                    }
+                    Field key = meta.fieldByName(nt, "key");
+                    Field val = meta.fieldByName(nt, "value");
+                    if (val == null) val = meta.fieldByName(nt, "val"); // ConcurrentHashMap.Node
+                    Field next = meta.fieldByName(nt, "next");
+                    Map<Field, Value> nv = node.getValues(List.of(key, val, next));
+                    RoundTrips.add(1);
+                    if (n++ > 0) emit(",");
+                    if (keysOnly) {
+                        value(nv.get(key), depth + 1);
+                    } else {
+                        emit("{\"key\":");
+                        value(nv.get(key), depth + 1);
+                        emit(",\"value\":");
+                        value(nv.get(val), depth + 1);
+                        emit("}");
+                    }
+                    node = (ObjectReference) nv.get(next);
+                }
+                if (n >= budget.maxElements || exhausted()) break;
+            }
+        }
+        emit("]");
+        if (size > n) emit(",\"$more\":" + (size - n));
+        if (forwarded > 0) emit(",\"$truncated\":\"resizing\",\"$forwardedBins\":" + forwarded);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.debugger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free multi-producer / single-consumer queue (per-slot sequence numbers, after
+ * Vyukov). Producers never block: {@link #offer} returns false when full.
+ */
+public final class RingBuffer<E> {
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head; // written by the single consumer only
+
+    public RingBuffer(int capacity) {
+        int cap = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Object[cap];
+        this.sequences = new AtomicLongArray(cap);
+        this.mask = cap - 1;
+        for (int i = 0; i < cap; i++) sequences.set(i, i);
+    }
+
+    public boolean offer(E e) {
+        long pos = tail.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots[idx] = e;
+                    sequences.lazySet(idx, pos + 1); // publish
+                    return true;
+                }
+                pos = tail.get();
+            } else if (dif < 0) {
+                return false; // full
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /** Consumer side only. */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long pos = head;
+        int idx = (int) (pos & mask);
+        if (sequences.get(idx) != pos + 1) return null; // empty, or producer not yet published
+        E e = (E) slots[idx];
+        slots[idx] = null;
+        sequences.lazySet(idx, pos + mask + 1); // free the slot for the next lap
+        head = pos + 1;
+        return e;
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
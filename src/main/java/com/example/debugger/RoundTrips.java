@@ -0,0 +1,41 @@
+package com.example.debugger;
+
+/**
+ * Counts JDWP requests issued by the inspection layer on the current thread, so a REPL command can
+ * report how many round-trips it cost. Only calls that always reach the target VM are counted;
+ * lookups JDI answers from its own caches are not. The calls that dominate inspection cost are
+ * also timed, into process-wide histograms per {@link Call}.
+ */
+public final class RoundTrips {
+    public enum Call { frames, frame, getValues, classesByName }
+
+    private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+    private static final LatencyHistogram[] LATENCY = new LatencyHistogram[Call.values().length];
+    static {
+        for (int i = 0; i < LATENCY.length; i++) LATENCY[i] = new LatencyHistogram();
+    }
+
+    private RoundTrips() {}
+
+    public static void add(int n) {
+        COUNT.get()[0] += n;
+    }
+
+    /** Counts one round-trip of kind {@code call} that started at {@code startNanos} ({@link System#nanoTime}). */
+    public static void timed(Call call, long startNanos) {
+        COUNT.get()[0]++;
+        LATENCY[call.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public static LatencyHistogram latency(Call call) {
+        return LATENCY[call.ordinal()];
+    }
+
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    public static long count() {
+        return COUNT.get()[0];
+    }
+}
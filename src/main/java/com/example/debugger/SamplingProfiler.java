@@ -0,0 +1,230 @@
+package com.example.debugger;
+
+import com.sun.jdi.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Periodic stack sampler for {@code --profile}. Each thread is suspended on its own, only for the
+ * {@link StackPrinter#frames} round-trip, so the target never stops as a whole. Stacks go into an
+ * interned call tree: methods become int ids and a child is found by the key
+ * {@code (parent << 32) | method} in a {@link LongIntMap}. The tree is capped at {@code maxNodes};
+ * once full, new paths are charged to their deepest existing ancestor, so memory stays bounded
+ * however long the run.
+ */
+public final class SamplingProfiler {
+    public static final class Options {
+        public int hz = 50;
+        public long durationMillis = 0;    // 0 = until the target exits or the debugger is stopped
+        public int maxNodes = 200_000;
+        public int maxDepth = 512;         // outermost frames kept per stack
+        public int top = 20;
+        public boolean allThreads = false; // default: only threads that are running right now
+        public Path collapsedOut;          // flame graph input; null = none
+    }
+
+    private final VirtualMachine vm;
+    private final Options opts;
+    private final EventLog eventLog; // may be null
+
+    // interned methods
+    private final Map<Method, Integer> methodIds = new HashMap<>();
+    private final List<String> methodNames = new ArrayList<>();
+    private long[] methodSelf = new long[1024];
+    private long[] methodTotal = new long[1024];
+    private long[] methodStamp = new long[1024]; // last stack that counted the method, for recursion
+
+    // call tree; node 0 is the root
+    private int[] nodeMethod = new int[1024];
+    private int[] nodeParent = new int[1024];
+    private long[] nodeSelf = new long[1024];
+    private int nodeCount = 1;
+    private final LongIntMap children = new LongIntMap(1024);
+
+    private long samples, stacks, truncated;
+    private long pauseNanos, maxPauseNanos;        // per thread
+    private long sampleNanos, maxSampleNanos;      // per sample, all threads
+    private volatile boolean stopped;
+
+    public SamplingProfiler(VirtualMachine vm, Options opts, EventLog eventLog) {
+        this.vm = vm;
+        this.opts = opts;
+        this.eventLog = eventLog;
+        nodeParent[0] = -1;
+        nodeMethod[0] = -1;
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    /** Samples on the calling thread until stopped, the duration elapses or the target goes away. */
+    public void run() {
+        long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, opts.hz);
+        long end = opts.durationMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(opts.durationMillis) : Long.MAX_VALUE;
+        long next = System.nanoTime();
+        while (!stopped && System.nanoTime() < end) {
+            try {
+                sample();
+            } catch (VMDisconnectedException e) {
+                break;
+            }
+            next += interval;
+            long wait = next - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            else next = System.nanoTime(); // sampling slower than the rate: don't try to catch up
+        }
+        stopped = true;
+    }
+
+    private void sample() {
+        long started = System.nanoTime();
+        long maxPause = 0;
+        int threads = 0;
+        for (ThreadReference t : vm.allThreads()) {
+            List<Location> stack;
+            long t0;
+            try {
+                if (!opts.allThreads && t.status() != ThreadReference.THREAD_STATUS_RUNNING) continue;
+                t0 = System.nanoTime();
+                t.suspend();
+                try {
+                    List<StackFrame> frames = StackPrinter.frames(t);
+                    stack = new ArrayList<>(frames.size());
+                    for (StackFrame f : frames) stack.add(f.location()); // frames die on resume
+                } finally {
+                    t.resume();
+                }
+            } catch (IncompatibleThreadStateException | ObjectCollectedException | IllegalThreadStateException e) {
+                continue; // thread ended between allThreads() and suspend()
+            }
+            long pause = System.nanoTime() - t0;
+            pauseNanos += pause;
+            maxPause = Math.max(maxPause, pause);
+            threads++;
+            record(stack);
+        }
+        long took = System.nanoTime() - started;
+        samples++;
+        sampleNanos += took;
+        maxSampleNanos = Math.max(maxSampleNanos, took);
+        maxPauseNanos = Math.max(maxPauseNanos, maxPause);
+        if (eventLog != null) {
+            eventLog.append("ProfileSample", Map.of("threads", threads,
+                    "maxThreadPauseMicros", maxPause / 1_000, "sampleMicros", took / 1_000));
+        }
+    }
+
+    private void record(List<Location> stack) {
+        stacks++;
+        if (stack.isEmpty()) return;
+        int from = stack.size() - 1;                         // outermost frame
+        int to = Math.max(0, stack.size() - opts.maxDepth);  // innermost frame kept
+        if (to > 0) truncated++;
+        int node = 0;
+        for (int i = from; i >= to; i--) {
+            int m = intern(stack.get(i).method());
+            if (methodStamp[m] != stacks) { // count recursive frames once per stack
+                methodStamp[m] = stacks;
+                methodTotal[m]++;
+            }
+            if (node < 0) continue;
+            long key = ((long) node << 32) | m;
+            int child = children.get(key, -1);
+            if (child < 0) {
+                if (nodeCount >= opts.maxNodes) {
+                    truncated++;
+                    nodeSelf[node]++;
+                    node = -1; // tree full: charge the ancestor, keep counting methods
+                    continue;
+                }
+                child = newNode(node, m);
+                children.put(key, child);
+            }
+            node = child;
+        }
+        if (node >= 0) nodeSelf[node]++;
+        methodSelf[intern(stack.get(to).method())]++;
+    }
+
+    private int intern(Method m) {
+        Integer id = methodIds.get(m);
+        if (id != null) return id;
+        int next = methodNames.size();
+        methodIds.put(m, next);
+        methodNames.add(m.declaringType().name() + "." + m.name());
+        if (next == methodSelf.length) {
+            methodSelf = Arrays.copyOf(methodSelf, next * 2);
+            methodTotal = Arrays.copyOf(methodTotal, next * 2);
+            methodStamp = Arrays.copyOf(methodStamp, next * 2);
+        }
+        return next;
+    }
+
+    private int newNode(int parent, int method) {
+        int n = nodeCount++;
+        if (n == nodeMethod.length) {
+            int cap = Math.min(n * 2, Math.max(opts.maxNodes, n + 1));
+            nodeMethod = Arrays.copyOf(nodeMethod, cap);
+            nodeParent = Arrays.copyOf(nodeParent, cap);
+            nodeSelf = Arrays.copyOf(nodeSelf, cap);
+        }
+        nodeMethod[n] = method;
+        nodeParent[n] = parent;
+        return n;
+    }
+
+    /** One line per call path, {@code outer;inner;leaf count}, as read by flamegraph.pl and speedscope. */
+    public void writeCollapsed(Writer out) throws IOException {
+        StringBuilder b = new StringBuilder();
+        int[] path = new int[opts.maxDepth];
+        for (int n = 1; n < nodeCount; n++) {
+            if (nodeSelf[n] == 0) continue;
+            int depth = 0;
+            for (int p = n; p > 0; p = nodeParent[p]) path[depth++] = nodeMethod[p];
+            b.setLength(0);
+            for (int i = depth - 1; i >= 0; i--) {
+                b.append(methodNames.get(path[i]));
+                if (i > 0) b.append(';');
+            }
+            out.write(b.append(' ').append(nodeSelf[n]).append('\n').toString());
+        }
+    }
+
+    public void report(PrintStream out) throws IOException {
+        out.printf("[profile] samples=%d stacks=%d methods=%d nodes=%d truncated=%d%n",
+                samples, stacks, methodNames.size(), nodeCount - 1, truncated);
+        if (samples > 0) {
+            double wall = sampleNanos * 100.0 * Math.max(1, opts.hz) / (samples * 1e9);
+            out.printf("[profile] pause per thread avg=%dus max=%dus; per sample avg=%dus max=%dus (sampler busy %.1f%% of wall time)%n",
+                    stacks == 0 ? 0 : pauseNanos / stacks / 1_000, maxPauseNanos / 1_000,
+                    sampleNanos / samples / 1_000, maxSampleNanos / 1_000, wall);
+        }
+        Integer[] ids = new Integer[methodNames.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = i;
+        Arrays.sort(ids, (x, y) -> Long.compare(methodSelf[y], methodSelf[x]));
+        out.printf("%8s %8s  %s%n", "self%", "total%", "method");
+        for (int i = 0; i < Math.min(opts.top, ids.length); i++) {
+            int m = ids[i];
+            if (methodSelf[m] == 0) break;
+            out.printf("%7.1f%% %7.1f%%  %s%n", 100.0 * methodSelf[m] / stacks, 100.0 * methodTotal[m] / stacks,
+                    methodNames.get(m));
+        }
+        if (opts.collapsedOut != null) {
+            try (Writer w = Files.newBufferedWriter(opts.collapsedOut, StandardCharsets.UTF_8)) {
+                writeCollapsed(w);
+            }
+            out.println("[profile] collapsed stacks written to " + opts.collapsedOut);
+        }
+        if (eventLog != null) {
+            eventLog.append("ProfileSummary", Map.of("samples", samples, "stacks", stacks,
+                    "nodes", nodeCount - 1, "avgThreadPauseMicros", stacks == 0 ? 0 : pauseNanos / stacks / 1_000,
+                    "maxThreadPauseMicros", maxPauseNanos / 1_000));
+        }
+    }
+}
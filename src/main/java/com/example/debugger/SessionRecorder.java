@@ -0,0 +1,275 @@
+package com.example.debugger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * {@code --record DIR}: compact binary copy of every event the debugger logs, for
+ * {@link SessionRecording} to query later. Layout of the directory:
+ * <ul>
+ * <li>{@code strings.dat} - the string table (event names, locations, thread names, field keys),
+ *     each string {@code [len varint][utf-8]}, its id being its position;</li>
+ * <li>{@code seg-NNNNN.rec} - append-only segments written through a mapped buffer: a
+ *     {@link #HEADER}-byte header, then records {@code [1][event][dt][thread+1][location+1][n]
+ *     n x [key][tag][value]}, with {@code dt} the microseconds since the previous record. A zero byte
+ *     or the end of the file ends the segment (sealed segments are trimmed to their records);</li>
+ * <li>{@code index.dat} - one length-prefixed entry per sealed segment: time span, record count,
+ *     threads seen, hit counts per (event, location) and a checkpoint every
+ *     {@code checkpointEvery} records for seeking by time.</li>
+ * </ul>
+ * Numbers are unsigned LEB128 varints; field values are zigzag varints (tag 0) or inline strings
+ * (tag 1), so one-off values such as logpoint messages stay out of the string table. A segment the
+ * index does not cover (the session crashed) is still readable by scanning it.
+ */
+public final class SessionRecorder implements Closeable {
+    static final int MAGIC = 0x44424752; // "DBGR"
+    static final int VERSION = 1;
+    static final int HEADER = 32;        // magic, version, segment number, session start (epoch micros), pad
+    static final byte RECORD = 1;
+    static final byte TAG_LONG = 0, TAG_STRING = 1;
+
+    public static final class Options {
+        public int segmentBytes = 16 << 20;
+        public int checkpointEvery = 1024;
+    }
+
+    /** Growable encode buffer; unlike ByteArrayOutputStream it takes no lock per byte. */
+    static final class Bytes {
+        private byte[] buf;
+        private int size;
+
+        Bytes(int capacity) { buf = new byte[capacity]; }
+
+        void write(int b) {
+            if (size == buf.length) buf = Arrays.copyOf(buf, size * 2);
+            buf[size++] = (byte) b;
+        }
+
+        void write(byte[] b) {
+            if (size + b.length > buf.length) buf = Arrays.copyOf(buf, Math.max(size * 2, size + b.length));
+            System.arraycopy(b, 0, buf, size, b.length);
+            size += b.length;
+        }
+
+        int size() { return size; }
+        void reset() { size = 0; }
+
+        ByteBuffer buffer() { return ByteBuffer.wrap(buf, 0, size); }
+    }
+
+    /** Per-segment summary kept in memory until the segment is sealed. */
+    private static final class SegmentIndex {
+        long first = -1, last, count;
+        final Set<Integer> threads = new HashSet<>();
+        final Map<Long, Long> hits = new HashMap<>();  // (event << 32 | location) -> count
+        final List<long[]> checkpoints = new ArrayList<>(); // {offset, micros}
+    }
+
+    private final Path dir;
+    private final Options opts;
+    private final long startNanos = System.nanoTime();
+    private final long startEpochMicros;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final FileChannel stringFile;
+    private final FileChannel indexFile;
+    private final Bytes scratch = new Bytes(256);
+
+    private FileChannel segmentFile;
+    private MappedByteBuffer segment;
+    private SegmentIndex index;
+    private int segmentNo = -1;
+    private long prevMicros;
+    private long records, dropped; // dropped: larger than a whole segment
+    private boolean closed;
+
+    private SessionRecorder(Path dir, Options opts) throws IOException {
+        this.dir = dir;
+        this.opts = opts;
+        Instant now = Instant.now();
+        this.startEpochMicros = now.getEpochSecond() * 1_000_000 + now.getNano() / 1_000;
+        this.stringFile = FileChannel.open(dir.resolve("strings.dat"), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.indexFile = FileChannel.open(dir.resolve("index.dat"), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        nextSegment();
+    }
+
+    /** Creates {@code dir} if needed; refuses a directory that already holds a recording. */
+    public static SessionRecorder open(Path dir, Options opts) throws IOException {
+        Files.createDirectories(dir);
+        if (Files.exists(dir.resolve("strings.dat"))) throw new IOException("Recording already exists: " + dir);
+        return new SessionRecorder(dir, opts);
+    }
+
+    /**
+     * Appends one event; {@code location} and {@code thread} fields get their own indexed slots.
+     * A failed write stops the recording: that call throws, later ones do nothing.
+     */
+    public synchronized void record(String event, Map<String, ?> fields) {
+        if (closed) return;
+        try {
+            long micros = (System.nanoTime() - startNanos) / 1_000;
+            int ev = intern(event);
+            Object t = fields.get("thread"), l = fields.get("location");
+            int thread = t != null ? intern(t.toString()) : -1;
+            int location = l != null ? intern(l.toString()) : -1;
+
+            scratch.reset();
+            scratch.write(RECORD);
+            putVarint(scratch, ev);
+            putVarint(scratch, micros - prevMicros);
+            putVarint(scratch, thread + 1);
+            putVarint(scratch, location + 1);
+            putVarint(scratch, fields.size() - (t != null ? 1 : 0) - (l != null ? 1 : 0));
+            for (var e : fields.entrySet()) {
+                if (e.getKey().equals("thread") || e.getKey().equals("location")) continue;
+                putVarint(scratch, intern(e.getKey()));
+                Object v = e.getValue();
+                if (v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte) {
+                    scratch.write(TAG_LONG);
+                    long n = ((Number) v).longValue();
+                    putVarint(scratch, (n << 1) ^ (n >> 63));
+                } else {
+                    scratch.write(TAG_STRING);
+                    putString(scratch, String.valueOf(v));
+                }
+            }
+            if (scratch.size() + 1 > segment.remaining()) { // keep one zero byte as the end marker
+                if (scratch.size() + 1 > opts.segmentBytes - HEADER) {
+                    dropped++;
+                    return;
+                }
+                nextSegment();
+                scratch.reset();
+                record(event, fields); // re-encode: the time delta restarts with the segment
+                return;
+            }
+            if (index.count % opts.checkpointEvery == 0) index.checkpoints.add(new long[] {segment.position(), micros});
+            segment.put(scratch.buffer());
+            prevMicros = micros;
+            if (index.first < 0) index.first = micros;
+            index.last = micros;
+            index.count++;
+            if (thread >= 0) index.threads.add(thread);
+            if (location >= 0) index.hits.merge(((long) ev << 32) | location, 1L, Long::sum);
+            records++;
+        } catch (IOException e) {
+            closed = true; // the session goes on without its recording
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int intern(String s) throws IOException {
+        Integer id = strings.get(s);
+        if (id != null) return id;
+        Bytes b = new Bytes(s.length() + 4);
+        putString(b, s);
+        ByteBuffer buf = b.buffer();
+        while (buf.hasRemaining()) stringFile.write(buf); // before any record that uses it
+        strings.put(s, strings.size());
+        return strings.size() - 1;
+    }
+
+    private void nextSegment() throws IOException {
+        if (segment != null) seal();
+        segmentNo++;
+        Path p = dir.resolve(String.format("seg-%05d.rec", segmentNo));
+        segmentFile = FileChannel.open(p, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = segmentFile.map(FileChannel.MapMode.READ_WRITE, 0, opts.segmentBytes);
+        segment.putInt(MAGIC).putInt(VERSION).putInt(segmentNo).putLong(startEpochMicros);
+        segment.position(HEADER);
+        index = new SegmentIndex();
+        prevMicros = 0;
+    }
+
+    /** Forces the segment's pages out and appends its index entry. */
+    private void seal() throws IOException {
+        segment.force();
+        try {
+            segmentFile.truncate(segment.position()); // the reader stops at the end of the file too
+        } catch (IOException ignored) {
+            // some platforms refuse to truncate a mapped file; the zero tail is harmless
+        }
+        segmentFile.close(); // the mapping stays valid until collected
+        Bytes b = new Bytes(64 + index.hits.size() * 8);
+        putVarint(b, segmentNo);
+        putVarint(b, index.count);
+        putVarint(b, Math.max(index.first, 0));
+        putVarint(b, index.last);
+        putVarint(b, index.threads.size());
+        for (int t : index.threads) putVarint(b, t);
+        putVarint(b, index.hits.size());
+        for (var e : index.hits.entrySet()) {
+            putVarint(b, e.getKey() >>> 32);
+            putVarint(b, e.getKey() & 0xffffffffL);
+            putVarint(b, e.getValue());
+        }
+        putVarint(b, index.checkpoints.size());
+        for (long[] c : index.checkpoints) {
+            putVarint(b, c[0]);
+            putVarint(b, c[1]);
+        }
+        Bytes length = new Bytes(5);
+        putVarint(length, b.size()); // a torn last entry is detected by its length and ignored
+        ByteBuffer[] bufs = {length.buffer(), b.buffer()};
+        while (bufs[1].hasRemaining()) indexFile.write(bufs);
+    }
+
+    public synchronized long records() { return records; }
+    public synchronized int segments() { return segmentNo + 1; }
+    public synchronized long dropped() { return dropped; }
+    public synchronized int stringCount() { return strings.size(); }
+
+    @Override public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            seal();
+            stringFile.force(false);
+            indexFile.force(false);
+        } catch (IOException ignored) {
+            // unsealed segments are scanned by the reader
+        }
+        try { stringFile.close(); } catch (IOException ignored) {}
+        try { indexFile.close(); } catch (IOException ignored) {}
+    }
+
+    // -------------------- Encoding --------------------
+
+    static void putVarint(Bytes out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    static void putString(Bytes out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        putVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static long getVarint(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[(int) getVarint(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.debugger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.example.debugger.SessionRecorder.*;
+
+/**
+ * Read side of a {@link SessionRecorder} directory. Filters are resolved against the string table
+ * first, so segments whose index shows no matching thread, (event, location) pair or time span are
+ * never mapped; within a segment a time filter seeks to the nearest checkpoint. Hit counts for
+ * segments that fall wholly inside the query come from the index without reading the segment.
+ */
+public final class SessionRecording {
+    public static final class Query {
+        public String location;      // substring of the location string, null = any
+        public String thread;        // thread name, null = any
+        public String event;         // event name, null = any
+        public long fromMicros = 0;  // since session start
+        public long toMicros = Long.MAX_VALUE;
+    }
+
+    public record Event(long micros, String event, String thread, String location, Map<String, Object> fields) {}
+
+    private static final class Segment {
+        final int no;
+        final Path path;
+        long count, first, last = -1; // last < 0: not in the index, scan it
+        Set<Integer> threads = Set.of();
+        Map<Long, Long> hits = Map.of();
+        long[][] checkpoints = new long[0][];
+
+        Segment(int no, Path path) {
+            this.no = no;
+            this.path = path;
+        }
+    }
+
+    /** String ids a query resolves to; -2 = the filter matches no string at all. */
+    private record Resolved(int event, int thread, BitSet locations) {
+        boolean empty() { return event == -2 || thread == -2 || (locations != null && locations.isEmpty()); }
+    }
+
+    private final List<String> strings = new ArrayList<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private long startEpochMicros;
+    private int scanned, skipped, fromIndex; // per query
+
+    private SessionRecording() {}
+
+    /** The digits between "seg-" and ".rec"; five or more, as "%05d" writes them. */
+    private static int segmentNo(Path p) {
+        String name = p.getFileName().toString();
+        return Integer.parseInt(name.substring("seg-".length(), name.length() - ".rec".length()));
+    }
+
+    public static SessionRecording open(Path dir) throws IOException {
+        SessionRecording r = new SessionRecording();
+        ByteBuffer s = ByteBuffer.wrap(Files.readAllBytes(dir.resolve("strings.dat")));
+        try {
+            while (s.hasRemaining()) r.strings.add(getString(s));
+        } catch (RuntimeException torn) {
+            // a string cut short by a crash: nothing written after it can use it
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().matches("seg-\\d+\\.rec"))
+                    .forEach(p -> r.segments.add(new Segment(segmentNo(p), p)));
+        }
+        r.segments.sort(Comparator.comparingInt(seg -> seg.no)); // by number: seg-100000 follows seg-99999
+        if (r.segments.isEmpty()) throw new IOException("No segments in " + dir);
+        try (FileChannel ch = FileChannel.open(r.segments.get(0).path)) {
+            ByteBuffer h = ByteBuffer.allocate(HEADER);
+            ch.read(h, 0);
+            h.flip();
+            if (h.getInt() != MAGIC) throw new IOException("Not a recording segment: " + r.segments.get(0).path);
+            if (h.getInt() != VERSION) throw new IOException("Unsupported recording version");
+            h.getInt();
+            r.startEpochMicros = h.getLong();
+        }
+        r.readIndex(ByteBuffer.wrap(Files.readAllBytes(dir.resolve("index.dat"))));
+        return r;
+    }
+
+    private void readIndex(ByteBuffer in) {
+        Map<Integer, Segment> byNo = new HashMap<>();
+        for (Segment s : segments) byNo.put(s.no, s);
+        while (in.hasRemaining()) {
+            int len;
+            try {
+                len = (int) getVarint(in);
+            } catch (RuntimeException torn) {
+                return;
+            }
+            if (len > in.remaining()) return; // torn last entry
+            ByteBuffer e = in.slice(in.position(), len);
+            in.position(in.position() + len);
+            Segment s = byNo.get((int) getVarint(e));
+            if (s == null) continue;
+            s.count = getVarint(e);
+            s.first = getVarint(e);
+            s.last = getVarint(e);
+            int n = (int) getVarint(e);
+            s.threads = new HashSet<>(n * 2);
+            for (int i = 0; i < n; i++) s.threads.add((int) getVarint(e));
+            n = (int) getVarint(e);
+            s.hits = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) s.hits.put(getVarint(e) << 32 | getVarint(e), getVarint(e));
+            n = (int) getVarint(e);
+            s.checkpoints = new long[n][];
+            for (int i = 0; i < n; i++) s.checkpoints[i] = new long[] {getVarint(e), getVarint(e)};
+        }
+    }
+
+    public Instant start() {
+        return Instant.ofEpochSecond(startEpochMicros / 1_000_000, startEpochMicros % 1_000_000 * 1_000);
+    }
+
+    public int segmentCount() { return segments.size(); }
+
+    /** "segments scanned=2 skipped=14 fromIndex=3" for the last query. */
+    public String lastQueryStats() {
+        return "segments scanned=" + scanned + " skipped=" + skipped + " fromIndex=" + fromIndex;
+    }
+
+    private Resolved resolve(Query q) {
+        int event = q.event == null ? -1 : strings.indexOf(q.event);
+        int thread = q.thread == null ? -1 : strings.indexOf(q.thread);
+        BitSet locations = null;
+        if (q.location != null) {
+            locations = new BitSet(strings.size());
+            for (int i = 0; i < strings.size(); i++) {
+                if (strings.get(i).contains(q.location)) locations.set(i);
+            }
+        }
+        return new Resolved(q.event != null && event < 0 ? -2 : event, q.thread != null && thread < 0 ? -2 : thread, locations);
+    }
+
+    /** True if the index proves the segment holds nothing for the query. */
+    private static boolean excluded(Segment s, Query q, Resolved r) {
+        if (s.last < 0) return false;
+        if (s.count == 0 || s.last < q.fromMicros || s.first > q.toMicros) return true;
+        if (r.thread >= 0 && !s.threads.contains(r.thread)) return true;
+        if (r.locations == null) return false; // the hit counts only cover events that have a location
+        for (long key : s.hits.keySet()) {
+            if (matchesKey(key, r)) return false;
+        }
+        return true;
+    }
+
+    private static boolean matchesKey(long key, Resolved r) {
+        return (r.event < 0 || (int) (key >>> 32) == r.event) && (r.locations == null || r.locations.get((int) key));
+    }
+
+    /** Streams matching events in time order. */
+    public void query(Query q, Consumer<Event> out) throws IOException {
+        scanned = skipped = fromIndex = 0;
+        Resolved r = resolve(q);
+        if (r.empty()) {
+            skipped = segments.size();
+            return;
+        }
+        for (Segment s : segments) {
+            if (excluded(s, q, r)) {
+                skipped++;
+                continue;
+            }
+            scanned++;
+            if (!scan(s, q, r, out)) return;
+        }
+    }
+
+    /** Matching events per location, highest count first. */
+    public Map<String, Long> hitCounts(Query q) throws IOException {
+        scanned = skipped = fromIndex = 0;
+        Map<String, Long> counts = new HashMap<>();
+        Resolved r = resolve(q);
+        if (r.empty()) {
+            skipped = segments.size();
+            return counts;
+        }
+        for (Segment s : segments) {
+            if (excluded(s, q, r)) {
+                skipped++;
+            } else if (s.last >= 0 && q.thread == null && s.first >= q.fromMicros && s.last <= q.toMicros) {
+                fromIndex++;
+                s.hits.forEach((key, n) -> {
+                    if (matchesKey(key, r)) counts.merge(strings.get((int) (long) key), n, Long::sum);
+                });
+            } else {
+                scanned++;
+                boolean more = scan(s, q, r, e -> {
+                    if (e.location != null) counts.merge(e.location, 1L, Long::sum);
+                });
+                if (!more) break;
+            }
+        }
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(counts.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (var e : sorted) out.put(e.getKey(), e.getValue());
+        return out;
+    }
+
+    /** Returns false once past {@code q.toMicros}: recorded times never go backwards. */
+    private boolean scan(Segment s, Query q, Resolved r, Consumer<Event> out) throws IOException {
+        MappedByteBuffer b;
+        try (FileChannel ch = FileChannel.open(s.path)) {
+            b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        long prev = 0, seekMicros = -1;
+        b.position(HEADER);
+        for (long[] cp : s.checkpoints) {
+            if (cp[1] > q.fromMicros) break;
+            b.position((int) cp[0]);
+            seekMicros = cp[1];
+        }
+        while (b.hasRemaining() && b.get() == RECORD) {
+            int ev = (int) getVarint(b);
+            long dt = getVarint(b);
+            long ts = seekMicros >= 0 ? seekMicros : prev + dt; // a checkpoint holds the absolute time
+            seekMicros = -1;
+            prev = ts;
+            int thread = (int) getVarint(b) - 1;
+            int location = (int) getVarint(b) - 1;
+            int n = (int) getVarint(b);
+            if (ts > q.toMicros) return false;
+            boolean match = ts >= q.fromMicros && (r.event < 0 || ev == r.event)
+                    && (r.thread < 0 || thread == r.thread)
+                    && (r.locations == null || (location >= 0 && r.locations.get(location)));
+            Map<String, Object> fields = match ? new LinkedHashMap<>() : null;
+            for (int i = 0; i < n; i++) {
+                int key = (int) getVarint(b);
+                byte tag = b.get();
+                if (tag == TAG_LONG) {
+                    long z = getVarint(b);
+                    if (match) fields.put(string(key), (z >>> 1) ^ -(z & 1));
+                } else if (match) {
+                    fields.put(string(key), getString(b));
+                } else {
+                    int len = (int) getVarint(b);
+                    b.position(b.position() + len);
+                }
+            }
+            if (match) {
+                out.accept(new Event(ts, string(ev), thread >= 0 ? string(thread) : null,
+                        location >= 0 ? string(location) : null, fields));
+            }
+        }
+        return true;
+    }
+
+    private String string(int id) {
+        return id < strings.size() ? strings.get(id) : "?" + id;
+    }
+}
@@ -3,40 +3,61 @@ package com.example.debugger;
 import com.sun.jdi.*;
 
 import java.io.PrintStream;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public final class StackPrinter {
     private StackPrinter() {}
 
-    public static void print(ThreadReference t, PrintStream out) {
+    /** The whole stack of a suspended thread, innermost first, in one round-trip. */
+    public static List<StackFrame> frames(ThreadReference t) throws IncompatibleThreadStateException {
+        long t0 = System.nanoTime();
+        List<StackFrame> frames = t.frames();
+        RoundTrips.timed(RoundTrips.Call.frames, t0);
+        return frames;
+    }
+
+    /** The top frame of a suspended thread, one round-trip. */
+    public static StackFrame top(ThreadReference t) throws IncompatibleThreadStateException {
+        long t0 = System.nanoTime();
+        StackFrame f = t.frame(0);
+        RoundTrips.timed(RoundTrips.Call.frame, t0);
+        return f;
+    }
+
+    public static void print(ThreadReference t, MetadataCache meta, PrintStream out) {
         try {
-            List<StackFrame> frames = t.frames();
+            List<StackFrame> frames = frames(t);
             for (int i = 0; i < frames.size(); i++) {
-                Location loc = frames.get(i).location();
-                out.printf("#%d %s.%s(%s:%d)%n",
-                        i,
-                        loc.declaringType().name(),
-                        loc.method().name(),
-                        loc.sourceName(),
-                        loc.lineNumber());
+                out.printf("#%d %s%n", i, meta.locationString(frames.get(i).location()));
             }
-        } catch (IncompatibleThreadStateException | AbsentInformationException e) {
+        } catch (IncompatibleThreadStateException e) {
             out.println("[stack unavailable: " + e + "]");
         }
     }
 
-    public static void printLocals(ThreadReference t, PrintStream out) {
+    /** The visible locals of the top frame in declaration order, fetched in one {@code getValues} round-trip. */
+    public static Map<LocalVariable, Value> locals(ThreadReference t, MetadataCache meta)
+            throws IncompatibleThreadStateException, AbsentInformationException {
+        StackFrame f = top(t);
+        List<LocalVariable> vars = meta.visibleVariables(f);
+        long t0 = System.nanoTime();
+        Map<LocalVariable, Value> values = f.getValues(vars);
+        RoundTrips.timed(RoundTrips.Call.getValues, t0);
+        Map<LocalVariable, Value> ordered = new LinkedHashMap<>();
+        for (LocalVariable v : vars) ordered.put(v, values.get(v));
+        return ordered;
+    }
+
+    public static void printLocals(ThreadReference t, MetadataCache meta, PrintStream out) {
         try {
-            StackFrame f = t.frame(0);
-            try {
-                for (LocalVariable v : f.visibleVariables()) {
-                    Value val = f.getValue(v);
-                    out.printf("%s %s = %s%n",
-                            v.typeName(), v.name(), VariableFormatter.format(val));
-                }
-            } catch (AbsentInformationException e) {
-                out.println("[locals unavailable: class compiled without -g:vars]");
+            for (Map.Entry<LocalVariable, Value> e : locals(t, meta).entrySet()) {
+                out.printf("%s %s = %s%n",
+                        e.getKey().typeName(), e.getKey().name(), VariableFormatter.format(e.getValue()));
             }
+        } catch (AbsentInformationException e) {
+            out.println("[locals unavailable: class compiled without -g:vars]");
         } catch (IncompatibleThreadStateException e) {
             out.println("[thread not suspended: " + e + "]");
         }
@@ -0,0 +1,21 @@
+package com.example.debugger;
+
+import com.sun.jdi.request.EventRequest;
+
+/** How much of the target VM an event stops: every thread, only the event thread, or nothing. */
+public enum SuspendPolicy {
+    all(EventRequest.SUSPEND_ALL),
+    thread(EventRequest.SUSPEND_EVENT_THREAD),
+    none(EventRequest.SUSPEND_NONE);
+
+    public final int jdi;
+
+    SuspendPolicy(int jdi) {
+        this.jdi = jdi;
+    }
+
+    /** Logpoints and conditions read the hitting frame, so they need at least the event thread parked. */
+    public SuspendPolicy atLeastThread() {
+        return this == none ? thread : this;
+    }
+}
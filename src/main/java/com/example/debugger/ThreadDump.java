@@ -0,0 +1,274 @@
+package com.example.debugger;
+
+import com.sun.jdi.*;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * All-thread dump with lock analysis ({@code dump}, {@code --dump-every}). The VM is suspended once;
+ * while it is, a small pool of workers fetches each thread's status, frames, owned monitors (with the
+ * frame that locked them) and contended monitor concurrently, so the pause is a few JDWP round-trips
+ * deep rather than four per thread. Stack frames and monitor infos die with the suspension, so only
+ * their locations, monitors and depths are kept; rendering happens after the VM is resumed.
+ * <p>
+ * From the capture: a wait-for graph (a thread blocked entering a monitor points at the monitor's
+ * owner) whose cycles are deadlocks, monitors ranked by how many threads are blocked on them, and
+ * threads grouped by state and identical stacks.
+ */
+public final class ThreadDump {
+    public static final class Options {
+        public int workers = 8;   // concurrent per-thread fetches
+        public int groups = 20;   // stack groups printed, largest first
+        public int depth = 32;    // frames printed per group
+    }
+
+    /** What one thread looked like while the VM was suspended; the name is asked after resuming. */
+    private record Capture(ThreadReference thread, String name, int status, List<Location> frames,
+                           List<ObjectReference> owned, int[] ownedDepth, ObjectReference contended) {
+        Capture named() {
+            String n;
+            try {
+                n = thread.name();
+            } catch (ObjectCollectedException e) {
+                n = "<ended>";
+            }
+            return new Capture(thread, n, status, frames, owned, ownedDepth, contended);
+        }
+
+        boolean blocked() {
+            return status == ThreadReference.THREAD_STATUS_MONITOR && contended != null;
+        }
+    }
+
+    /** A monitor other threads are queued on. */
+    private record HotMonitor(ObjectReference monitor, Capture owner, List<Capture> blocked, List<Capture> waiting) {}
+
+    private final VirtualMachine vm;
+    private final Options opts;
+    private final MetadataCache meta;
+    private final EventLog log; // may be null
+    private final ExecutorService pool;
+    private final boolean monitorFrames, ownedInfo, contendedInfo;
+
+    public ThreadDump(VirtualMachine vm, Options opts, MetadataCache meta, EventLog log) {
+        this.vm = vm;
+        this.opts = opts;
+        this.meta = meta;
+        this.log = log;
+        this.monitorFrames = vm.canGetMonitorFrameInfo();
+        this.ownedInfo = vm.canGetOwnedMonitorInfo();
+        this.contendedInfo = vm.canGetCurrentContendedMonitor();
+        // created up front so no worker is started while the target is suspended
+        this.pool = Executors.newFixedThreadPool(opts.workers, r -> {
+            Thread t = new Thread(r, "thread-dump");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Captures every thread under one suspension, then prints the analysis. */
+    public synchronized void dump(PrintStream out, int groups) {
+        List<Capture> threads = new ArrayList<>();
+        long t0 = System.nanoTime();
+        vm.suspend();
+        long suspendedNanos;
+        try {
+            List<Future<Capture>> pending = new ArrayList<>();
+            for (ThreadReference t : vm.allThreads()) pending.add(pool.submit(() -> capture(t)));
+            for (Future<Capture> f : pending) {
+                try {
+                    Capture c = f.get();
+                    if (c != null) threads.add(c);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof VMDisconnectedException vde) throw vde;
+                    // the thread ended between allThreads and its fetch
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally {
+            vm.resume();
+            suspendedNanos = System.nanoTime() - t0;
+        }
+        threads.replaceAll(Capture::named);
+        RoundTrips.add(3 + threads.size() * 5); // suspend, allThreads, resume; status, frames, monitors, contended, name
+        report(threads, suspendedNanos, out, groups);
+    }
+
+    /** One thread, on a pool worker: status, frames, owned and contended monitors. Null if it is gone. */
+    private Capture capture(ThreadReference t) {
+        try {
+            int status = t.status();
+            List<Location> frames = new ArrayList<>();
+            try {
+                long f0 = System.nanoTime();
+                List<StackFrame> stack = t.frames();
+                RoundTrips.timed(RoundTrips.Call.frames, f0); // counted on the worker, timed for 'stats'
+                for (StackFrame f : stack) frames.add(f.location());
+            } catch (IncompatibleThreadStateException e) {
+                // not started or already dead: no stack
+            }
+            List<ObjectReference> owned = new ArrayList<>();
+            int[] depth;
+            if (monitorFrames) {
+                List<MonitorInfo> infos = t.ownedMonitorsAndFrames();
+                depth = new int[infos.size()];
+                for (int i = 0; i < infos.size(); i++) {
+                    owned.add(infos.get(i).monitor());
+                    depth[i] = infos.get(i).stackDepth();
+                }
+            } else {
+                if (ownedInfo) owned.addAll(t.ownedMonitors());
+                depth = new int[owned.size()];
+                Arrays.fill(depth, -1);
+            }
+            ObjectReference contended = contendedInfo ? t.currentContendedMonitor() : null;
+            return new Capture(t, null, status, frames, owned, depth, contended);
+        } catch (IncompatibleThreadStateException | ObjectCollectedException e) {
+            return null; // gone
+        }
+    }
+
+    // -------------------- Analysis --------------------
+
+    private void report(List<Capture> threads, long suspendedNanos, PrintStream out, int groups) {
+        Map<ObjectReference, Capture> owners = new HashMap<>();
+        for (Capture c : threads) {
+            for (ObjectReference m : c.owned) owners.put(m, c);
+        }
+        List<List<Capture>> deadlocks = deadlocks(threads, owners);
+        List<HotMonitor> hot = hotMonitors(threads, owners);
+        Map<String, List<Capture>> stacks = new LinkedHashMap<>();
+        for (Capture c : threads) stacks.computeIfAbsent(stackKey(c), k -> new ArrayList<>()).add(c);
+        List<List<Capture>> bySize = new ArrayList<>(stacks.values());
+        bySize.sort(Comparator.comparingInt((List<Capture> l) -> -l.size()));
+
+        out.printf("[dump] %d threads, %d distinct stacks, suspended %.1fms (%d workers)%n",
+                threads.size(), stacks.size(), suspendedNanos / 1e6, opts.workers);
+        if (!deadlocks.isEmpty()) {
+            out.println("Found " + deadlocks.size() + " deadlock(s):");
+            for (List<Capture> cycle : deadlocks) {
+                for (Capture c : cycle) {
+                    out.println("  \"" + c.name + "\" blocked on " + monitor(c.contended) + " held by \""
+                            + owners.get(c.contended).name + "\" at " + top(c));
+                    for (int i = 0; i < c.owned.size(); i++) {
+                        out.println("      holds " + monitor(c.owned.get(i))
+                                + (c.ownedDepth[i] >= 0 && c.ownedDepth[i] < c.frames.size()
+                                        ? " locked at " + meta.locationString(c.frames.get(c.ownedDepth[i])) : ""));
+                    }
+                }
+            }
+        }
+        if (!hot.isEmpty()) {
+            out.println("Hot monitors:");
+            for (HotMonitor h : hot) {
+                out.println("  " + monitor(h.monitor) + " owner=" + (h.owner != null ? "\"" + h.owner.name + "\"" : "-")
+                        + " blocked=" + h.blocked.size() + " waiting=" + h.waiting.size() + " " + names(h.blocked, 5));
+            }
+        }
+        int shown = 0;
+        for (List<Capture> g : bySize) {
+            if (shown++ == groups) {
+                out.println("... " + (bySize.size() - groups) + " more stack group(s)");
+                break;
+            }
+            Capture first = g.get(0);
+            out.println(g.size() + " thread(s) " + statusName(first.status) + ": " + names(g, 8));
+            for (int i = 0; i < first.frames.size() && i < opts.depth; i++) {
+                out.println("    at " + meta.locationString(first.frames.get(i)));
+            }
+            if (first.frames.size() > opts.depth) out.println("    ... " + (first.frames.size() - opts.depth) + " more");
+        }
+
+        if (log != null) {
+            List<String> locked = new ArrayList<>();
+            for (List<Capture> cycle : deadlocks) locked.add(names(cycle, cycle.size()));
+            List<String> monitors = new ArrayList<>();
+            for (int i = 0; i < hot.size() && i < 5; i++) monitors.add(monitor(hot.get(i).monitor) + " blocked=" + hot.get(i).blocked.size());
+            log.append("ThreadDump", Map.of("threads", threads.size(), "distinctStacks", stacks.size(),
+                    "deadlocks", deadlocks.size(), "deadlocked", String.join("; ", locked),
+                    "hotMonitors", String.join("; ", monitors), "suspendedMicros", suspendedNanos / 1_000));
+        }
+    }
+
+    /**
+     * Cycles of the wait-for graph. Every blocked thread has exactly one outgoing edge (to the owner
+     * of the monitor it is entering), so following edges from each unvisited thread finds each cycle once.
+     */
+    private static List<List<Capture>> deadlocks(List<Capture> threads, Map<ObjectReference, Capture> owners) {
+        List<List<Capture>> cycles = new ArrayList<>();
+        Map<Capture, Integer> state = new IdentityHashMap<>(); // absent: unvisited, 1: on the current path, 2: done
+        for (Capture start : threads) {
+            List<Capture> path = new ArrayList<>();
+            Capture c = start;
+            while (c != null && !state.containsKey(c)) {
+                state.put(c, 1);
+                path.add(c);
+                c = c.blocked() ? owners.get(c.contended) : null;
+            }
+            if (c != null && state.get(c) == 1) cycles.add(new ArrayList<>(path.subList(path.indexOf(c), path.size())));
+            for (Capture p : path) state.put(p, 2);
+        }
+        return cycles;
+    }
+
+    /** Monitors with blocked threads, most blocked first; {@code Object.wait()} waiters count second. */
+    private static List<HotMonitor> hotMonitors(List<Capture> threads, Map<ObjectReference, Capture> owners) {
+        Map<ObjectReference, HotMonitor> byMonitor = new HashMap<>();
+        for (Capture c : threads) {
+            if (c.contended == null) continue;
+            HotMonitor h = byMonitor.computeIfAbsent(c.contended,
+                    m -> new HotMonitor(m, owners.get(m), new ArrayList<>(), new ArrayList<>()));
+            (c.blocked() ? h.blocked : h.waiting).add(c);
+        }
+        List<HotMonitor> hot = new ArrayList<>();
+        for (HotMonitor h : byMonitor.values()) {
+            if (!h.blocked.isEmpty()) hot.add(h);
+        }
+        hot.sort(Comparator.comparingInt((HotMonitor h) -> -h.blocked.size()).thenComparingInt(h -> -h.waiting.size()));
+        return hot;
+    }
+
+    private String stackKey(Capture c) {
+        StringBuilder b = new StringBuilder().append(c.status);
+        for (Location l : c.frames) b.append('|').append(meta.locationString(l));
+        return b.toString();
+    }
+
+    private String top(Capture c) {
+        return c.frames.isEmpty() ? "?" : meta.locationString(c.frames.get(0));
+    }
+
+    private static String monitor(ObjectReference m) {
+        return m.referenceType().name() + "@" + m.uniqueID();
+    }
+
+    private static String names(List<Capture> threads, int max) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < threads.size() && i < max; i++) {
+            if (i > 0) b.append(", ");
+            b.append('"').append(threads.get(i).name).append('"');
+        }
+        if (threads.size() > max) b.append(", ... ").append(threads.size() - max).append(" more");
+        return b.toString();
+    }
+
+    static String statusName(int status) {
+        return switch (status) {
+            case ThreadReference.THREAD_STATUS_RUNNING -> "RUNNING";
+            case ThreadReference.THREAD_STATUS_SLEEPING -> "SLEEPING";
+            case ThreadReference.THREAD_STATUS_MONITOR -> "BLOCKED";
+            case ThreadReference.THREAD_STATUS_WAIT -> "WAITING";
+            case ThreadReference.THREAD_STATUS_NOT_STARTED -> "NOT_STARTED";
+            case ThreadReference.THREAD_STATUS_ZOMBIE -> "TERMINATED";
+            default -> "UNKNOWN";
+        };
+    }
+
+    public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -2,6 +2,10 @@ package com.example.debugger;
 
 import com.sun.jdi.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 public final class VariableFormatter {
     private VariableFormatter() {}
 
@@ -10,17 +14,21 @@ public final class VariableFormatter {
         if (v instanceof PrimitiveValue) return v.toString();
         if (v instanceof StringReference) {
             // Surround strings with double quotes for readability
+            RoundTrips.add(1);
             return "\"" + ((StringReference) v).value() + "\"";
         }
         if (v instanceof ArrayReference) {
             ArrayReference a = (ArrayReference) v;
-            int n = Math.min(a.length(), 10);
-            StringBuilder b = new StringBuilder("Array[len=" + a.length() + "][");
+            int len = a.length();
+            int n = Math.min(len, 10);
+            StringBuilder b = new StringBuilder("Array[len=" + len + "][");
+            List<Value> elems = n > 0 ? a.getValues(0, n) : List.of(); // one round-trip for the slice
+            RoundTrips.add(n > 0 ? 2 : 1);
             for (int i = 0; i < n; i++) {
                 if (i > 0) b.append(", ");
-                b.append(format(a.getValue(i)));
+                b.append(format(elems.get(i)));
             }
-            if (a.length() > n) b.append(", ...");
+            if (len > n) b.append(", ...");
             b.append("]");
             return b.toString();
         }
@@ -30,4 +38,21 @@ public final class VariableFormatter {
         }
         return v.toString();
     }
+
+    /** "name = value" for every instance field of {@code o}, fetched with one getValues round-trip. */
+    public static List<String> formatFields(ObjectReference o) {
+        List<Field> fields = new ArrayList<>();
+        for (Field f : o.referenceType().allFields()) {
+            if (!f.isStatic()) fields.add(f);
+        }
+        List<String> out = new ArrayList<>(fields.size());
+        if (fields.isEmpty()) return out;
+        long t0 = System.nanoTime();
+        Map<Field, Value> values = o.getValues(fields);
+        RoundTrips.timed(RoundTrips.Call.getValues, t0);
+        for (Field f : fields) {
+            out.add(f.name() + " = " + format(values.get(f)));
+        }
+        return out;
+    }
 }